@@ -1,8 +1,14 @@
 package com.music.festival.demo;
 
+import com.music.festival.demo.jfr.OutputWriteEvent;
+import com.music.festival.demo.model.CatalogueEntry;
 import com.music.festival.demo.model.RecordLabel;
+import com.music.festival.demo.model.ShardIndexEntry;
+import com.music.festival.demo.pipeline.PipelinedRefreshExecutor;
+import com.music.festival.demo.pipeline.StageMetrics;
 import com.music.festival.demo.rest.client.exception.ResponseParsingException;
 import com.music.festival.demo.service.MusicFestivalService;
+import com.music.festival.demo.shard.ShardedOutputWriter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
@@ -10,8 +16,11 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.ConfigurableApplicationContext;
 
 import javax.annotation.PostConstruct;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
@@ -20,6 +29,11 @@ import java.util.List;
  * Spring boot application class.
  * Exposes method to list festivals. The method is on post construct  by default.
  * The boolean system property 'listFestivalDataOnAppStart' can be set to false to change this behavior.
+ * The boolean system property 'outOfCore.enabled' writes the file from festival data restructured on disk,
+ * for festival data that does not fit in memory.
+ * The boolean system property 'refresh.pipelined' renders lines while earlier lines are being written.
+ * The boolean system property 'output.sharded' writes shards of record labels in parallel, along with an index
+ * locating every record label, instead of a single file.
  */
 @SpringBootApplication
 public class MusicFestivalDataOrganizerDemo {
@@ -27,6 +41,12 @@ public class MusicFestivalDataOrganizerDemo {
     @Autowired
     private MusicFestivalService musicFestivalService;
 
+    @Autowired
+    private PipelinedRefreshExecutor refreshExecutor;
+
+    @Autowired
+    private ShardedOutputWriter shardedOutputWriter;
+
     /**
      * System property listFestivalsOnApplicationStart is set to TRUE by default.
      */
@@ -39,6 +59,24 @@ public class MusicFestivalDataOrganizerDemo {
     @Value("${outputFileUri:RestructuredFestivalData.txt}")
     private String outputFilePath = "RestructuredFestivalData.txt";
 
+    /**
+     * System property outOfCore.enabled is set to FALSE by default.
+     */
+    @Value("${outOfCore.enabled:false}")
+    private Boolean outOfCoreEnabled = Boolean.FALSE;
+
+    /**
+     * System property refresh.pipelined is set to FALSE by default.
+     */
+    @Value("${refresh.pipelined:false}")
+    private Boolean pipelinedRefresh = Boolean.FALSE;
+
+    /**
+     * System property output.sharded is set to FALSE by default.
+     */
+    @Value("${output.sharded:false}")
+    private Boolean shardedOutput = Boolean.FALSE;
+
     private static final String LEADING_SPACES = "     ";
 
     /**
@@ -50,7 +88,15 @@ public class MusicFestivalDataOrganizerDemo {
     @PostConstruct
     public void listFestivals() throws IOException, ResponseParsingException {
         if(listFestivalDataOnAppStart) {
+            if(outOfCoreEnabled) {
+                writeFestivalDataToFileOutOfCore(outputFilePath);
+                return;
+            }
             List<RecordLabel> festivals = musicFestivalService.getAllFestivals();
+            if(shardedOutput) {
+                writeFestivalDataToShards(festivals, outputFilePath);
+                return;
+            }
             writeFestivalDataToFile(festivals, outputFilePath);
         }
     }
@@ -66,8 +112,121 @@ public class MusicFestivalDataOrganizerDemo {
      * @throws IOException
      */
     private void writeFestivalDataToFile(List<RecordLabel> recordLabels, String outputFilePath) throws IOException {
+        OutputWriteEvent writeEvent = new OutputWriteEvent();
+        writeEvent.begin();
+        if(pipelinedRefresh) {
+            refreshExecutor.renderAndWrite(recordLabels, this::getRecordLabelLines, Paths.get(this.outputFilePath));
+            List<StageMetrics> stageMetrics = refreshExecutor.getLastRenderAndWriteMetrics();
+            commitOutputWriteEvent(writeEvent, Paths.get(this.outputFilePath), false, stageMetrics.get(stageMetrics.size() - 1).getItemCount());
+            return;
+        }
         List<String> lines = getOutputFileContent(recordLabels);
         Files.write(Paths.get(this.outputFilePath), lines);
+        commitOutputWriteEvent(writeEvent, Paths.get(this.outputFilePath), false, lines.size());
+    }
+
+    /**
+     * Helper method to write data to shards with an index.
+     * @param recordLabels
+     * @param outputFilePath
+     * @throws IOException
+     */
+    private void writeFestivalDataToShards(List<RecordLabel> recordLabels, String outputFilePath) throws IOException {
+        OutputWriteEvent writeEvent = new OutputWriteEvent();
+        writeEvent.begin();
+        List<ShardIndexEntry> indexEntries = shardedOutputWriter.write(recordLabels, this::getRecordLabelLines, Paths.get(outputFilePath));
+        long lineCount = 0;
+        long fileSize = 0;
+        for(ShardIndexEntry indexEntry : indexEntries) {
+            lineCount += indexEntry.getLineCount();
+            fileSize += indexEntry.getLength();
+        }
+        long shardCount = indexEntries.stream().map(ShardIndexEntry::getShardFile).distinct().count();
+        commitOutputWriteEvent(writeEvent, ShardedOutputWriter.getIndexFile(Paths.get(outputFilePath)), false, lineCount, fileSize, (int) shardCount);
+    }
+
+    /**
+     * Helper method to write data restructured out of core to file.
+     * Lines are written as the sorted entries arrive, without building the whole content in memory.
+     * @param outputFilePath
+     * @throws IOException
+     * @throws ResponseParsingException
+     */
+    private void writeFestivalDataToFileOutOfCore(String outputFilePath) throws IOException, ResponseParsingException {
+        OutputWriteEvent writeEvent = new OutputWriteEvent();
+        writeEvent.begin();
+        long[] lineCount = new long[1];
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(outputFilePath))) {
+            CatalogueEntry[] previousEntry = new CatalogueEntry[1];
+            musicFestivalService.restructureFestivalDataOutOfCore(entry -> {
+                lineCount[0] += writeCatalogueEntry(writer, previousEntry[0], entry);
+                previousEntry[0] = entry;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        commitOutputWriteEvent(writeEvent, Paths.get(outputFilePath), true, lineCount[0]);
+    }
+
+    /**
+     * Commits the flight recorder event for writing the output file, if the event is enabled.
+     */
+    private void commitOutputWriteEvent(OutputWriteEvent writeEvent, Path outputFile, boolean outOfCore, long lineCount) throws IOException {
+        commitOutputWriteEvent(writeEvent, outputFile, outOfCore, lineCount, -1, 0);
+    }
+
+    /**
+     * Commits the flight recorder event for writing output files, if the event is enabled.
+     * A negative file size is replaced by the size of the output file.
+     */
+    private void commitOutputWriteEvent(OutputWriteEvent writeEvent, Path outputFile, boolean outOfCore, long lineCount,
+                                        long fileSize, int shardCount) throws IOException {
+        writeEvent.end();
+        if(writeEvent.shouldCommit()) {
+            writeEvent.outputFile = outputFile.toString();
+            writeEvent.outOfCore = outOfCore;
+            writeEvent.lineCount = lineCount;
+            writeEvent.fileSize = fileSize < 0 ? Files.size(outputFile) : fileSize;
+            writeEvent.shardCount = shardCount;
+            writeEvent.commit();
+        }
+    }
+
+    /**
+     * Helper method to write the lines for an entry, given the entry written before it.
+     * @param writer
+     * @param previousEntry null for the first entry
+     * @param entry
+     * @return number of lines written
+     */
+    private int writeCatalogueEntry(BufferedWriter writer, CatalogueEntry previousEntry, CatalogueEntry entry) {
+        try {
+            int lineCount = 1;
+
+            // Add record label name
+            boolean newRecordLabel = previousEntry == null || !previousEntry.getRecordLabel().equals(entry.getRecordLabel());
+            if(newRecordLabel) {
+                writeLine(writer, getFormattedRecordLabel(entry.getRecordLabel()));
+                lineCount++;
+            }
+
+            // Add Band Name
+            if(newRecordLabel || !previousEntry.getBand().equals(entry.getBand())) {
+                writeLine(writer, getFormattedBandName(entry.getBand()));
+                lineCount++;
+            }
+
+            // Add Festival
+            writeLine(writer, getFormattedFestivalName(entry.getFestival()));
+            return lineCount;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeLine(BufferedWriter writer, String line) throws IOException {
+        writer.write(line);
+        writer.newLine();
     }
 
     /**
@@ -75,20 +234,31 @@ public class MusicFestivalDataOrganizerDemo {
      * @param recordLabels
      * @return
      */
-    private List<String> getOutputFileContent(List<RecordLabel> recordLabels) {
+    List<String> getOutputFileContent(List<RecordLabel> recordLabels) {
         List<String> lines = new ArrayList<>();
-        recordLabels.forEach(recordLabel -> {
-            // Add record label name
-            lines.add(getFormattedRecordLabel(recordLabel.getName()));
+        recordLabels.forEach(recordLabel -> lines.addAll(getRecordLabelLines(recordLabel)));
+
+        return lines;
+    }
+
+    /**
+     * Helper method to organize the lines of a record label with its bands and festivals.
+     * @param recordLabel
+     * @return
+     */
+    private List<String> getRecordLabelLines(RecordLabel recordLabel) {
+        List<String> lines = new ArrayList<>();
+
+        // Add record label name
+        lines.add(getFormattedRecordLabel(recordLabel.getName()));
 
-            // Add Band Names
-            recordLabel.getBands().forEach((bandName, band) -> {
-                lines.add(getFormattedBandName(bandName));
+        // Add Band Names
+        recordLabel.getBands().forEach((bandName, band) -> {
+            lines.add(getFormattedBandName(bandName));
 
-                // Add Festivals
-                band.getFestivals().forEach((festivalName, festival) -> {
-                    lines.add(getFormattedFestivalName(festivalName));
-                });
+            // Add Festivals
+            band.getFestivals().forEach((festivalName, festival) -> {
+                lines.add(getFormattedFestivalName(festivalName));
             });
         });
 
@@ -0,0 +1,18 @@
+package com.music.festival.demo.cache;
+
+/**
+ * Ordering used for record label, band and festival names.
+ */
+public enum CollationMode {
+
+    /**
+     * Order by {@link String#compareTo(String)}, i.e. by UTF-16 code units.
+     */
+    NATURAL,
+
+    /**
+     * Order by a {@link java.text.Collator} for the configured locale,
+     * so that case and accents sort the way readers of that locale expect.
+     */
+    LOCALE
+}
@@ -0,0 +1,93 @@
+package com.music.festival.demo.cache;
+
+import com.music.festival.demo.model.Band;
+import com.music.festival.demo.model.CatalogueEntry;
+import com.music.festival.demo.model.FestivalDataChangeEvent;
+import com.music.festival.demo.model.RecordLabel;
+
+import java.util.*;
+
+/**
+ * Compares two restructured catalogues and describes the differences as a {@link FestivalDataChangeEvent}.
+ */
+final class FestivalDataChangeDetector {
+
+    private FestivalDataChangeDetector() {
+    }
+
+    /**
+     * Detects record labels, bands and festivals added or removed between two catalogues.
+     * @param version snapshot version of the current catalogue
+     * @param previous record labels by name before the refresh
+     * @param current record labels by name after the refresh
+     * @param nameComparator orders the names within each list of changes
+     * @return {@link FestivalDataChangeEvent}
+     */
+    static FestivalDataChangeEvent detectChanges(long version, Map<String, RecordLabel> previous, Map<String, RecordLabel> current,
+                                                 Comparator<String> nameComparator) {
+        List<String> addedRecordLabels = new ArrayList<>();
+        List<String> removedRecordLabels = new ArrayList<>();
+        List<CatalogueEntry> addedBands = new ArrayList<>();
+        List<CatalogueEntry> removedBands = new ArrayList<>();
+        List<CatalogueEntry> addedFestivals = new ArrayList<>();
+        List<CatalogueEntry> removedFestivals = new ArrayList<>();
+
+        SortedSet<String> recordLabelNames = new TreeSet<>(nameComparator);
+        recordLabelNames.addAll(previous.keySet());
+        recordLabelNames.addAll(current.keySet());
+
+        recordLabelNames.forEach(recordLabelName -> {
+            Map<String, Band> previousBands = getBands(previous.get(recordLabelName));
+            Map<String, Band> currentBands = getBands(current.get(recordLabelName));
+
+            if(!previous.containsKey(recordLabelName)) {
+                addedRecordLabels.add(recordLabelName);
+            } else if(!current.containsKey(recordLabelName)) {
+                removedRecordLabels.add(recordLabelName);
+            }
+
+            SortedSet<String> bandNames = new TreeSet<>(nameComparator);
+            bandNames.addAll(previousBands.keySet());
+            bandNames.addAll(currentBands.keySet());
+
+            bandNames.forEach(bandName -> {
+                Set<String> previousFestivals = getFestivalNames(previousBands.get(bandName));
+                Set<String> currentFestivals = getFestivalNames(currentBands.get(bandName));
+
+                if(!previousBands.containsKey(bandName)) {
+                    addedBands.add(new CatalogueEntry(recordLabelName, bandName, null));
+                } else if(!currentBands.containsKey(bandName)) {
+                    removedBands.add(new CatalogueEntry(recordLabelName, bandName, null));
+                }
+
+                currentFestivals.forEach(festivalName -> {
+                    if(!previousFestivals.contains(festivalName)) {
+                        addedFestivals.add(new CatalogueEntry(recordLabelName, bandName, festivalName));
+                    }
+                });
+                previousFestivals.forEach(festivalName -> {
+                    if(!currentFestivals.contains(festivalName)) {
+                        removedFestivals.add(new CatalogueEntry(recordLabelName, bandName, festivalName));
+                    }
+                });
+            });
+        });
+
+        return new FestivalDataChangeEvent(version, System.currentTimeMillis(),
+                addedRecordLabels, removedRecordLabels, addedBands, removedBands, addedFestivals, removedFestivals);
+    }
+
+    private static Map<String, Band> getBands(RecordLabel recordLabel) {
+        if(recordLabel == null || recordLabel.getBands() == null) {
+            return Collections.emptyMap();
+        }
+        return recordLabel.getBands();
+    }
+
+    private static Set<String> getFestivalNames(Band band) {
+        if(band == null || band.getFestivals() == null) {
+            return Collections.emptySet();
+        }
+        return band.getFestivals().keySet();
+    }
+}
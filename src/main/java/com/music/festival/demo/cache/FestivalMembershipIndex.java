@@ -0,0 +1,218 @@
+package com.music.festival.demo.cache;
+
+import com.music.festival.demo.model.RecordLabel;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact index answering whether a band played a festival.
+ * Band and festival names are mapped to dictionary ids, and every band keeps a bitset of the festival ids it played.
+ * An optional Bloom filter in front of the dictionaries answers most negative checks from the cached string hash codes alone.
+ * Festivals with an empty name are not indexed, since they represent bands that did not play a festival.
+ * Immutable once built, a new index is built for every snapshot.
+ */
+public class FestivalMembershipIndex {
+
+    private static final int BLOOM_FILTER_BITS_PER_ENTRY = 16;
+    private static final int BLOOM_FILTER_HASH_FUNCTIONS = 3;
+    private static final int MAX_BLOOM_FILTER_BITS = 1 << 30;
+
+    private final Map<String, Integer> bandIds;
+    private final Map<String, Integer> festivalIds;
+    private final long[][] festivalBitsByBand;
+
+    /**
+     * Bloom filter bits over (band, festival) pairs, null if disabled
+     */
+    private final long[] bloomFilterBits;
+    private final int bloomFilterMask;
+
+    private FestivalMembershipIndex(Map<String, Integer> bandIds, Map<String, Integer> festivalIds,
+                                    long[][] festivalBitsByBand, long[] bloomFilterBits) {
+        this.bandIds = bandIds;
+        this.festivalIds = festivalIds;
+        this.festivalBitsByBand = festivalBitsByBand;
+        this.bloomFilterBits = bloomFilterBits;
+        this.bloomFilterMask = bloomFilterBits == null ? 0 : (bloomFilterBits.length << 6) - 1;
+    }
+
+    /**
+     * Builds the index for restructured festival data.
+     * @param recordLabelsMap record labels by name
+     * @param bloomFilterEnabled true to put a Bloom filter in front of the bitsets
+     * @return {@link FestivalMembershipIndex}
+     */
+    static FestivalMembershipIndex build(Map<String, RecordLabel> recordLabelsMap, boolean bloomFilterEnabled) {
+        Map<String, Integer> bandIds = new HashMap<>();
+        Map<String, Integer> festivalIds = new HashMap<>();
+        long[] festivalEntryCount = new long[1];
+
+        // Assign dictionary ids
+        recordLabelsMap.values().forEach(recordLabel -> {
+            if(recordLabel.getBands() == null) {
+                return;
+            }
+            recordLabel.getBands().forEach((bandName, band) -> {
+                bandIds.putIfAbsent(bandName, bandIds.size());
+                if(band.getFestivals() != null) {
+                    band.getFestivals().keySet().forEach(festivalName -> {
+                        if(!festivalName.isEmpty()) {
+                            festivalIds.putIfAbsent(festivalName, festivalIds.size());
+                            festivalEntryCount[0]++;
+                        }
+                    });
+                }
+            });
+        });
+
+        long[] bloomFilterBits = bloomFilterEnabled ? new long[getBloomFilterWords(festivalEntryCount[0])] : null;
+        int bloomFilterMask = bloomFilterEnabled ? (bloomFilterBits.length << 6) - 1 : 0;
+
+        // Set festival bits for every band, bands signed to several record labels are merged
+        long[][] festivalBitsByBand = new long[bandIds.size()][];
+        recordLabelsMap.values().forEach(recordLabel -> {
+            if(recordLabel.getBands() == null) {
+                return;
+            }
+            recordLabel.getBands().forEach((bandName, band) -> {
+                int bandId = bandIds.get(bandName);
+                if(band.getFestivals() == null) {
+                    return;
+                }
+                band.getFestivals().keySet().forEach(festivalName -> {
+                    if(festivalName.isEmpty()) {
+                        return;
+                    }
+                    int festivalId = festivalIds.get(festivalName);
+                    long[] festivalBits = ensureCapacity(festivalBitsByBand[bandId], festivalId);
+                    festivalBitsByBand[bandId] = festivalBits;
+                    festivalBits[festivalId >>> 6] |= 1L << festivalId;
+                    if(bloomFilterBits != null) {
+                        addToBloomFilter(bloomFilterBits, bloomFilterMask, bandName.hashCode(), festivalName.hashCode());
+                    }
+                });
+            });
+        });
+
+        return new FestivalMembershipIndex(bandIds, festivalIds, festivalBitsByBand, bloomFilterBits);
+    }
+
+    /**
+     * True if the band played the festival.
+     * @param bandName
+     * @param festivalName
+     * @return
+     */
+    public boolean hasPlayed(String bandName, String festivalName) {
+        if(bandName == null || festivalName == null) {
+            return false;
+        }
+
+        // Quick negative answer without dictionary lookups
+        if(bloomFilterBits != null && !mightContain(bandName.hashCode(), festivalName.hashCode())) {
+            return false;
+        }
+
+        Integer bandId = bandIds.get(bandName);
+        Integer festivalId = festivalIds.get(festivalName);
+        if(bandId == null || festivalId == null) {
+            return false;
+        }
+        long[] festivalBits = festivalBitsByBand[bandId];
+        return festivalBits != null && isSet(festivalBits, festivalId);
+    }
+
+    /**
+     * Checks (band, festival) pairs given as two lists of equal size.
+     * @param bandNames
+     * @param festivalNames
+     * @param results receives the answer for the pair at the same position, must be at least as long as the lists
+     */
+    public void hasPlayed(List<String> bandNames, List<String> festivalNames, boolean[] results) {
+        if(bandNames.size() != festivalNames.size()) {
+            throw new IllegalArgumentException("Band names and festival names must have the same size.");
+        }
+        if(results.length < bandNames.size()) {
+            throw new IllegalArgumentException("Results array is smaller than the number of pairs.");
+        }
+        for(int i = 0; i < bandNames.size(); i++) {
+            results[i] = hasPlayed(bandNames.get(i), festivalNames.get(i));
+        }
+    }
+
+    /**
+     * Number of distinct bands in the index.
+     * @return
+     */
+    public int getBandCount() {
+        return bandIds.size();
+    }
+
+    /**
+     * Number of distinct festivals in the index.
+     * @return
+     */
+    public int getFestivalCount() {
+        return festivalIds.size();
+    }
+
+    private boolean mightContain(int bandHash, int festivalHash) {
+        int hash1 = mix(bandHash * 31 + festivalHash);
+        int hash2 = mix(festivalHash * 31 + bandHash) | 1;
+        for(int i = 0; i < BLOOM_FILTER_HASH_FUNCTIONS; i++) {
+            if(!isSet(bloomFilterBits, (hash1 + i * hash2) & bloomFilterMask)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void addToBloomFilter(long[] bloomFilterBits, int mask, int bandHash, int festivalHash) {
+        int hash1 = mix(bandHash * 31 + festivalHash);
+        int hash2 = mix(festivalHash * 31 + bandHash) | 1;
+        for(int i = 0; i < BLOOM_FILTER_HASH_FUNCTIONS; i++) {
+            int bit = (hash1 + i * hash2) & mask;
+            bloomFilterBits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Number of 64 bit words for the Bloom filter, rounded up to a power of two so that bits can be masked.
+     */
+    private static int getBloomFilterWords(long entries) {
+        int bits = (int) Math.min(MAX_BLOOM_FILTER_BITS, Math.max(64, entries * BLOOM_FILTER_BITS_PER_ENTRY));
+        return (Integer.highestOneBit(bits - 1) << 1) >>> 6;
+    }
+
+    /**
+     * Murmur3 finalizer to spread string hash codes over the Bloom filter.
+     */
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    private static boolean isSet(long[] bits, int index) {
+        int word = index >>> 6;
+        return word < bits.length && (bits[word] & (1L << index)) != 0;
+    }
+
+    private static long[] ensureCapacity(long[] bits, int index) {
+        int words = (index >>> 6) + 1;
+        if(bits == null) {
+            return new long[words];
+        }
+        if(bits.length < words) {
+            long[] grownBits = new long[words];
+            System.arraycopy(bits, 0, grownBits, 0, bits.length);
+            return grownBits;
+        }
+        return bits;
+    }
+}
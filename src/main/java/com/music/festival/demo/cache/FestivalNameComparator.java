@@ -0,0 +1,82 @@
+package com.music.festival.demo.cache;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Comparator for record label, band and festival names.
+ * In {@link CollationMode#LOCALE} mode the {@link CollationKey} of every distinct name is computed once
+ * and reused by every following comparison, instead of collating the strings again on each comparison.
+ * Names that collate equally are ordered by {@link String#compareTo(String)}, so the ordering stays total.
+ * Not thread safe, a new comparator is used for every restructure.
+ */
+public class FestivalNameComparator implements Comparator<String> {
+
+    private final Collator collator;
+
+    /**
+     * Collation keys by name, null if keys are not cached
+     */
+    private final Map<String, CollationKey> collationKeys;
+
+    private FestivalNameComparator(Collator collator, boolean cacheCollationKeys) {
+        this.collator = collator;
+        this.collationKeys = cacheCollationKeys ? new HashMap<>() : null;
+    }
+
+    /**
+     * Creates a comparator for the given collation mode.
+     * @param collationMode
+     * @param locale locale used in {@link CollationMode#LOCALE} mode
+     * @return {@link FestivalNameComparator}
+     */
+    public static FestivalNameComparator forMode(CollationMode collationMode, Locale locale) {
+        return forMode(collationMode, locale, true);
+    }
+
+    /**
+     * Creates a comparator for the given collation mode.
+     * @param collationMode
+     * @param locale locale used in {@link CollationMode#LOCALE} mode
+     * @param cacheCollationKeys false to collate on every comparison, keeping memory use independent of the number of names
+     * @return {@link FestivalNameComparator}
+     */
+    public static FestivalNameComparator forMode(CollationMode collationMode, Locale locale, boolean cacheCollationKeys) {
+        if(collationMode == CollationMode.LOCALE) {
+            return new FestivalNameComparator(Collator.getInstance(locale), cacheCollationKeys);
+        }
+        return new FestivalNameComparator(null, false);
+    }
+
+    @Override
+    public int compare(String first, String second) {
+        if(collator == null) {
+            return first.compareTo(second);
+        }
+        int result = collationKeys == null
+                ? collator.compare(first, second)
+                : getCollationKey(first).compareTo(getCollationKey(second));
+        return result != 0 ? result : first.compareTo(second);
+    }
+
+    /**
+     * Number of distinct names a collation key has been computed for.
+     * @return
+     */
+    int getCollationKeyCount() {
+        return collationKeys == null ? 0 : collationKeys.size();
+    }
+
+    private CollationKey getCollationKey(String name) {
+        CollationKey collationKey = collationKeys.get(name);
+        if(collationKey == null) {
+            collationKey = collator.getCollationKey(name);
+            collationKeys.put(name, collationKey);
+        }
+        return collationKey;
+    }
+}
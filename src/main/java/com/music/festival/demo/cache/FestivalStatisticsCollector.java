@@ -0,0 +1,96 @@
+package com.music.festival.demo.cache;
+
+import com.music.festival.demo.model.FestivalStatistics;
+
+import java.util.*;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Collects catalogue statistics incrementally while festival data is being restructured.
+ * Not thread safe, a new collector is used for every restructure.
+ */
+class FestivalStatisticsCollector {
+
+    private final Map<String, Integer> bandCountByRecordLabel = new HashMap<>();
+    private final Map<String, Set<String>> festivalNamesByBand = new HashMap<>();
+    private final Set<String> recordLabelsWithFestivals = new HashSet<>();
+    private int bandCount;
+    private long entryCount;
+
+    /**
+     * Records a record label seen for the first time.
+     * @param recordLabelName
+     */
+    void recordLabelAdded(String recordLabelName) {
+        bandCountByRecordLabel.putIfAbsent(recordLabelName, 0);
+    }
+
+    /**
+     * Records a band added to a record label for the first time.
+     * @param recordLabelName
+     * @param bandName
+     */
+    void bandAdded(String recordLabelName, String bandName) {
+        bandCount++;
+        bandCountByRecordLabel.merge(recordLabelName, 1, Integer::sum);
+        festivalNamesByBand.computeIfAbsent(bandName, name -> new HashSet<>());
+    }
+
+    /**
+     * Records a festival added to a band of a record label for the first time.
+     * @param recordLabelName
+     * @param bandName
+     * @param festivalName
+     */
+    void festivalAdded(String recordLabelName, String bandName, String festivalName) {
+        entryCount++;
+        if(festivalName.isEmpty()) {
+            return;
+        }
+        festivalNamesByBand.computeIfAbsent(bandName, name -> new HashSet<>()).add(festivalName);
+        recordLabelsWithFestivals.add(recordLabelName);
+    }
+
+    /**
+     * Number of distinct (record label, band) pairs, a band signed to two record labels is counted twice.
+     * @return
+     */
+    int getBandCount() {
+        return bandCount;
+    }
+
+    /**
+     * Number of distinct (record label, band, festival) entries, including festivals with an empty name.
+     * @return
+     */
+    long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Builds the statistics collected so far.
+     * @param nameComparator orders band and record label names
+     * @return {@link FestivalStatistics}
+     */
+    FestivalStatistics build(Comparator<String> nameComparator) {
+        Map<String, Integer> festivalCountByBand = new HashMap<>();
+        festivalNamesByBand.forEach((bandName, festivalNames) -> festivalCountByBand.put(bandName, festivalNames.size()));
+
+        // Most booked bands first, ties broken alphabetically
+        List<String> mostBookedBands = new ArrayList<>(festivalCountByBand.keySet());
+        mostBookedBands.sort(Comparator.<String, Integer>comparing(festivalCountByBand::get).reversed()
+                .thenComparing(nameComparator));
+
+        List<String> recordLabelsWithoutFestivals = bandCountByRecordLabel.keySet()
+                .stream()
+                .filter(recordLabelName -> !recordLabelsWithFestivals.contains(recordLabelName))
+                .sorted(nameComparator)
+                .collect(toList());
+
+        return new FestivalStatistics(Collections.unmodifiableMap(new HashMap<>(bandCountByRecordLabel)),
+                Collections.unmodifiableMap(festivalCountByBand),
+                Collections.unmodifiableList(mostBookedBands),
+                Collections.unmodifiableList(recordLabelsWithoutFestivals));
+    }
+}
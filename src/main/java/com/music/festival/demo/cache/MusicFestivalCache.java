@@ -2,7 +2,14 @@ package com.music.festival.demo.cache;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.music.festival.demo.feed.FestivalDataChangeFeed;
+import com.music.festival.demo.jfr.RestructureEvent;
+import com.music.festival.demo.jfr.SnapshotSwapEvent;
+import com.music.festival.demo.model.FestivalDataChangeEvent;
+import com.music.festival.demo.model.FestivalStatistics;
 import com.music.festival.demo.model.RecordLabel;
+import com.music.festival.demo.offheap.OffHeapFestivalSnapshot;
+import com.music.festival.demo.pipeline.PipelinedRefreshExecutor;
 import com.music.festival.demo.rest.client.MusicFestivalRESTApiClient;
 import com.music.festival.demo.rest.client.exception.ResponseParsingException;
 import com.music.festival.demo.rest.client.model.Band;
@@ -10,13 +17,14 @@ import com.music.festival.demo.rest.client.model.Festival;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 
 import static java.util.Map.Entry.comparingByKey;
-import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
 
 /**
@@ -24,6 +32,7 @@ import static java.util.stream.Collectors.toMap;
  * The first invocation of getAllMusicFestivals() triggers REST API call to get festival data.
  * The data is cached for 24 hours after which it becomes stale.
  * Cache is reloaded on subsequent call to getAllMusicFestivals() after TTL has expired.
+ * Every reload that changes the festival data produces a new snapshot version and publishes a change event.
  */
 @Component
 public class MusicFestivalCache {
@@ -35,12 +44,78 @@ public class MusicFestivalCache {
     @Autowired
     private MusicFestivalRESTApiClient apiClient;
 
+    @Autowired
+    private FestivalDataChangeFeed changeFeed;
+
+    @Autowired
+    private PipelinedRefreshExecutor refreshExecutor;
+
     private Cache<String, RecordLabel> recordLabelCache;
 
     /**
-     * Population time and time to live is required to keep track of stale cache
+     * Cached record labels in sort order, so that reads do not sort again
+     */
+    private volatile List<RecordLabel> sortedRecordLabels = Collections.emptyList();
+
+    /**
+     * Statistics computed while restructuring, replaced together with the cached record labels
+     */
+    private volatile FestivalStatistics festivalStatistics;
+
+    /**
+     * Version of the cached festival data, incremented whenever a reload changes it
+     */
+    private volatile long snapshotVersion;
+
+    /**
+     * Band and festival membership index, rebuilt together with the cached record labels
+     */
+    private volatile FestivalMembershipIndex membershipIndex;
+
+    /**
+     * Change events of reloads, published in version order once the cache monitor is released
+     */
+    private final Queue<FestivalDataChangeEvent> unpublishedChangeEvents = new ConcurrentLinkedQueue<>();
+    private final Object publishLock = new Object();
+
+    /**
+     * System property membershipIndex.bloomFilterEnabled is set to TRUE by default.
+     */
+    @Value("${membershipIndex.bloomFilterEnabled:true}")
+    private boolean bloomFilterEnabled = true;
+
+    /**
+     * System property collation.mode is set to NATURAL by default.
+     * LOCALE orders names with a collator for the locale given by system property collation.locale.
      */
-    private LocalDateTime cachePopulationTimestamp;
+    @Value("${collation.mode:NATURAL}")
+    private CollationMode collationMode = CollationMode.NATURAL;
+
+    /**
+     * System property collation.locale is set to en by default.
+     */
+    @Value("${collation.locale:en}")
+    private String collationLocale = "en";
+
+    /**
+     * System property snapshot.store is set to HEAP by default.
+     * OFF_HEAP keeps the cached festival data in direct buffers, to be sized with -XX:MaxDirectMemorySize.
+     */
+    @Value("${snapshot.store:HEAP}")
+    private SnapshotStore snapshotStore = SnapshotStore.HEAP;
+
+    /**
+     * System property refresh.pipelined is set to FALSE by default.
+     * TRUE restructures festivals while the response is still being fetched and parsed.
+     */
+    @Value("${refresh.pipelined:false}")
+    private boolean pipelinedRefresh = false;
+
+    /**
+     * Population time and time to live is required to keep track of stale cache.
+     * Milliseconds since the epoch, so that the staleness check on every read does not allocate date objects.
+     */
+    private long cachePopulationTimestamp;
     private static final Integer TIME_TO_LIVE_IN_HOURS = 24;
 
     /**
@@ -50,6 +125,17 @@ public class MusicFestivalCache {
         recordLabelCache = CacheBuilder.newBuilder().build();
     }
 
+    /**
+     * Cache separate from the singleton, for tests.
+     * @param apiClient
+     * @param changeFeed
+     */
+    MusicFestivalCache(MusicFestivalRESTApiClient apiClient, FestivalDataChangeFeed changeFeed) {
+        this();
+        this.apiClient = apiClient;
+        this.changeFeed = changeFeed;
+    }
+
     /**
      * Returns instance of MusicFestivalCache
      * @return instance of MusicFestivalCache
@@ -60,24 +146,74 @@ public class MusicFestivalCache {
 
     /**
      * Get restructured festival data
-     * @return List of {@link RecordLabel}s
+     * @return Unmodifiable list of {@link RecordLabel}s, sorted alphabetically by name.
+     * The list is shared by all readers of the cached data, copy it before sorting or filtering it in place.
      * @throws ResponseParsingException when response string from REST API cannot be parsed
      */
     public List<RecordLabel> getAllMusicFestivals() throws ResponseParsingException {
         // Initialize cache if empty
         if(isCacheEmptyOrStale()) {
-            populateCache();
+            refreshCache();
         }
 
-        // Prepare a list of record labels
-        List<RecordLabel> recordLabelsList = recordLabelCache.asMap().values()
-                .stream()
-                .collect(toList());
+        // Record labels are sorted once when the cache is populated
+        return sortedRecordLabels;
+    }
 
-        // Sort record labels alphabetically by name
-        recordLabelsList.sort(Comparator.comparing(previous -> previous.getName()));
+    /**
+     * Get catalogue statistics computed for the cached festival data
+     * @return {@link FestivalStatistics}
+     * @throws ResponseParsingException when response string from REST API cannot be parsed
+     */
+    public FestivalStatistics getFestivalStatistics() throws ResponseParsingException {
+        // Initialize cache if empty
+        if(isCacheEmptyOrStale()) {
+            refreshCache();
+        }
+        return festivalStatistics;
+    }
 
-        return recordLabelsList;
+    /**
+     * Get the index answering which bands played which festivals in the cached festival data
+     * @return {@link FestivalMembershipIndex}
+     * @throws ResponseParsingException when response string from REST API cannot be parsed
+     */
+    public FestivalMembershipIndex getMembershipIndex() throws ResponseParsingException {
+        // Initialize cache if empty
+        if(isCacheEmptyOrStale()) {
+            refreshCache();
+        }
+        return membershipIndex;
+    }
+
+    /**
+     * Get the version of the cached festival data
+     * @return snapshot version, 0 if the cache has not been populated with any data
+     */
+    public long getSnapshotVersion() {
+        return snapshotVersion;
+    }
+
+    /**
+     * Populate the cache, then publish its changes.
+     * Change listeners are not called under the cache monitor, so readers waiting on it never wait for them.
+     * @throws ResponseParsingException
+     */
+    private void refreshCache() throws ResponseParsingException {
+        populateCache();
+        publishChanges();
+    }
+
+    /**
+     * Publish the change events of completed reloads in version order.
+     */
+    private void publishChanges() {
+        synchronized(publishLock) {
+            FestivalDataChangeEvent changeEvent;
+            while((changeEvent = unpublishedChangeEvents.poll()) != null) {
+                changeFeed.publish(changeEvent);
+            }
+        }
     }
 
     /**
@@ -85,15 +221,105 @@ public class MusicFestivalCache {
      * Then, restructure the data and populate cache.
      * @throws ResponseParsingException
      */
-    private void populateCache() throws ResponseParsingException {
-        // API call to get festivals data
-        List<Festival> festivals = apiClient.getFestivals();
+    private synchronized void populateCache() throws ResponseParsingException {
+        // Another thread may have populated the cache meanwhile
+        if(!isCacheEmptyOrStale()) {
+            return;
+        }
+
         LOGGER.debug("Populating cache with music festivals data.");
 
-        // Prepare cache and populate with restructured festival data
-        recordLabelCache.putAll(restructureFestivalData(festivals));
+        // Restructure festival data along with the sorted, statistics and membership views of it
+        RestructureEvent restructureEvent = new RestructureEvent();
+        FestivalStatisticsCollector statisticsCollector = new FestivalStatisticsCollector();
+        FestivalNameComparator nameComparator = FestivalNameComparator.forMode(collationMode, Locale.forLanguageTag(collationLocale));
+        Map<String, RecordLabel> recordLabelsMap = new HashMap<String, RecordLabel>();
+        int festivalCount;
+        long restructureTime;
+        long restructureStart;
+        if(pipelinedRefresh) {
+            // Festivals are restructured as soon as they are parsed from the response, so the event spans the fetch.
+            // Time spent on each festival is added up to tell the restructure work apart.
+            restructureEvent.begin();
+            int[] pipelinedFestivalCount = new int[1];
+            long[] pipelinedRestructureTime = new long[1];
+            refreshExecutor.fetchAndRestructure(festival -> {
+                long festivalStart = System.nanoTime();
+                addFestival(festival, recordLabelsMap, statisticsCollector);
+                pipelinedFestivalCount[0]++;
+                pipelinedRestructureTime[0] += System.nanoTime() - festivalStart;
+            });
+            festivalCount = pipelinedFestivalCount[0];
+            restructureTime = pipelinedRestructureTime[0];
+            restructureStart = System.nanoTime();
+        } else {
+            // API call to get festivals data, timed by the upstream request and response parse events
+            List<Festival> festivals = apiClient.getFestivals();
+            restructureEvent.begin();
+            restructureTime = 0;
+            restructureStart = System.nanoTime();
+            restructureFestivalData(festivals, recordLabelsMap, statisticsCollector);
+            festivalCount = festivals == null ? 0 : festivals.size();
+        }
+        sortBandsAndFestivals(recordLabelsMap, nameComparator);
+        List<RecordLabel> newSortedRecordLabels = Collections.unmodifiableList(new ArrayList<>(getSorterRecordLabels(recordLabelsMap, nameComparator).values()));
+        FestivalStatistics newFestivalStatistics = statisticsCollector.build(nameComparator);
+        FestivalMembershipIndex newMembershipIndex = FestivalMembershipIndex.build(recordLabelsMap, bloomFilterEnabled);
+
+        // Model objects of the off-heap store are flyweights, the restructured ones become garbage after the swap
+        Map<String, RecordLabel> newCachedRecordLabels = recordLabelsMap;
+        long offHeapBytes = 0;
+        if(snapshotStore == SnapshotStore.OFF_HEAP) {
+            OffHeapFestivalSnapshot offHeapSnapshot = OffHeapFestivalSnapshot.build(newSortedRecordLabels);
+            newSortedRecordLabels = offHeapSnapshot.getRecordLabels();
+            newCachedRecordLabels = offHeapSnapshot.asMap();
+            offHeapBytes = offHeapSnapshot.getOffHeapBytes();
+        }
+        restructureEvent.end();
+        restructureTime += System.nanoTime() - restructureStart;
+        if(restructureEvent.shouldCommit()) {
+            restructureEvent.outOfCore = false;
+            restructureEvent.fetchOverlapped = pipelinedRefresh;
+            restructureEvent.restructureTime = restructureTime;
+            restructureEvent.festivalCount = festivalCount;
+            restructureEvent.recordLabelCount = recordLabelsMap.size();
+            restructureEvent.bandCount = statisticsCollector.getBandCount();
+            restructureEvent.entryCount = statisticsCollector.getEntryCount();
+            restructureEvent.commit();
+        }
+
+        FestivalDataChangeEvent changeEvent = FestivalDataChangeDetector.detectChanges(snapshotVersion + 1,
+                recordLabelCache.asMap(), recordLabelsMap, nameComparator);
+
+        // Replace cached record labels, removed ones are invalidated only after the new ones are in place
+        SnapshotSwapEvent swapEvent = new SnapshotSwapEvent();
+        swapEvent.begin();
+        recordLabelCache.putAll(newCachedRecordLabels);
+        recordLabelCache.invalidateAll(changeEvent.getRemovedRecordLabels());
+        sortedRecordLabels = newSortedRecordLabels;
+        festivalStatistics = newFestivalStatistics;
+        membershipIndex = newMembershipIndex;
 
-        cachePopulationTimestamp = LocalDateTime.now();
+        cachePopulationTimestamp = System.currentTimeMillis();
+
+        // Changes are published under a new snapshot version
+        if(!changeEvent.hasNoChanges()) {
+            snapshotVersion = changeEvent.getVersion();
+        }
+        swapEvent.end();
+        if(swapEvent.shouldCommit()) {
+            swapEvent.version = snapshotVersion;
+            swapEvent.changed = !changeEvent.hasNoChanges();
+            swapEvent.recordLabelCount = recordLabelsMap.size();
+            swapEvent.removedRecordLabelCount = changeEvent.getRemovedRecordLabels().size();
+            swapEvent.offHeapBytes = offHeapBytes;
+            swapEvent.commit();
+        }
+
+        // Published by the caller after leaving the monitor, outside of the swap event
+        if(!changeEvent.hasNoChanges()) {
+            unpublishedChangeEvents.add(changeEvent);
+        }
     }
 
     /**
@@ -107,8 +333,7 @@ public class MusicFestivalCache {
         }
 
         // Return true for cache is stale
-        LocalDateTime now = LocalDateTime.now();
-        if(now.minusHours(TIME_TO_LIVE_IN_HOURS).isAfter(cachePopulationTimestamp)) {
+        if(System.currentTimeMillis() - cachePopulationTimestamp > TimeUnit.HOURS.toMillis(TIME_TO_LIVE_IN_HOURS)) {
             return true;
         }
 
@@ -118,64 +343,84 @@ public class MusicFestivalCache {
     /**
      * Restructures the festivals data.
      * @param festivals
-     * @return Map of {@link RecordLabel}s by name
+     * @param recordLabelsMap receives {@link RecordLabel}s by name
+     * @param statisticsCollector collects catalogue statistics while restructuring
      */
-    private Map<String, RecordLabel> restructureFestivalData(List<Festival> festivals) {
+    void restructureFestivalData(List<Festival> festivals, Map<String, RecordLabel> recordLabelsMap,
+                                         FestivalStatisticsCollector statisticsCollector) {
         LOGGER.debug("Restructuring music festivals data.");
-        final Map<String, RecordLabel> recordLabelsMap = new HashMap<String, RecordLabel>();
 
         if(festivals !=  null && festivals.size() > 0) {
             // Process each festival object to restructure data
-            festivals.forEach(festival -> {
-                        final String festivalName = Objects.toString(festival.getName(), "");
-                        List<Band> bands = festival.getBands();
+            festivals.forEach(festival -> addFestival(festival, recordLabelsMap, statisticsCollector));
+        }
+    }
 
-                        bands.forEach(band -> {
-                            String bandName = Objects.toString(band.getName(), "");
-                            String recordLabelName = Objects.toString(band.getRecordLabel(), "");
+    /**
+     * Adds the bands of a festival to their record labels.
+     * @param festival
+     * @param recordLabelsMap {@link RecordLabel}s by name
+     * @param statisticsCollector collects catalogue statistics while restructuring
+     */
+    private void addFestival(Festival festival, Map<String, RecordLabel> recordLabelsMap, FestivalStatisticsCollector statisticsCollector) {
+        final String festivalName = Objects.toString(festival.getName(), "");
+        List<Band> bands = festival.getBands();
 
-                            // Get and existing record label from map or create new.
-                            RecordLabel recordLabel = createOrGetRecordLabelFromMap(recordLabelsMap, recordLabelName);
+        bands.forEach(band -> {
+            String bandName = Objects.toString(band.getName(), "");
+            String recordLabelName = Objects.toString(band.getRecordLabel(), "");
 
-                            // Get band form the record label if its already been added, else create new
-                            com.music.festival.demo.model.Band recordLabelBand = createOrGetBandByNameFromRecordLabel(bandName, recordLabel);
+            // Get and existing record label from map or create new.
+            RecordLabel recordLabel = createOrGetRecordLabelFromMap(recordLabelsMap, recordLabelName, statisticsCollector);
 
-                            // Get festivals by the band and record label, create map if not already present
-                            Map<String, com.music.festival.demo.model.Festival> festivalsByBand = createOrGetFestivalsByBand(recordLabelBand);
+            // Get band form the record label if its already been added, else create new
+            com.music.festival.demo.model.Band recordLabelBand = createOrGetBandByNameFromRecordLabel(bandName, recordLabel, statisticsCollector);
 
-                            // Add festival to the band with bandName under the record label with recordLabelName
-                            festivalsByBand.put(festivalName, new com.music.festival.demo.model.Festival(festivalName));
+            // Get festivals by the band and record label, create map if not already present
+            Map<String, com.music.festival.demo.model.Festival> festivalsByBand = createOrGetFestivalsByBand(recordLabelBand);
 
-                            LOGGER.debug("Added festival " + festivalName + " to the band " + bandName + " for record label " + recordLabelName);
-                        });
-                    });
-        }
+            // Add festival to the band with bandName under the record label with recordLabelName
+            if(festivalsByBand.put(festivalName, new com.music.festival.demo.model.Festival(festivalName)) == null) {
+                statisticsCollector.festivalAdded(recordLabelName, bandName, festivalName);
+            }
 
+            // Runs for every band appearance, the guard saves the argument array while DEBUG is off
+            if(LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Added festival {} to the band {} for record label {}", festivalName, bandName, recordLabelName);
+            }
+        });
+    }
+
+    /**
+     * Sorts bands of every record label and festivals of every band.
+     * @param recordLabelsMap {@link RecordLabel}s by name
+     * @param nameComparator orders band and festival names
+     */
+    private void sortBandsAndFestivals(Map<String, RecordLabel> recordLabelsMap, Comparator<String> nameComparator) {
         // Sort Band Names for each record label
         recordLabelsMap.forEach((recordLabelName, recordLabel) -> {
-            LinkedHashMap<String, com.music.festival.demo.model.Band> sortedBandsMap = getSorterBands(recordLabel);
+            LinkedHashMap<String, com.music.festival.demo.model.Band> sortedBandsMap = getSorterBands(recordLabel, nameComparator);
             recordLabel.setBands(sortedBandsMap);
             
             // Sort Festival Names for each band
             sortedBandsMap.forEach((bandName, band) -> {
-                band.setFestivals(getSortedFestivals(band));
+                band.setFestivals(getSortedFestivals(band, nameComparator));
             });
         });
-
-
-        return recordLabelsMap;
     }
 
     /**
      * Sorts festivals under this band in alphabetically ascending order by festival name
      * @param band
+     * @param nameComparator
      * @return
      */
-    private LinkedHashMap<String, com.music.festival.demo.model.Festival> getSortedFestivals(com.music.festival.demo.model.Band band) {
+    private LinkedHashMap<String, com.music.festival.demo.model.Festival> getSortedFestivals(com.music.festival.demo.model.Band band,
+                                                                                          Comparator<String> nameComparator) {
         return band.getFestivals()
                 .entrySet()
                 .stream()
-                .sorted(comparingByKey())
+                .sorted(comparingByKey(nameComparator))
                 .collect(toMap(Map.Entry::getKey, Map.Entry::getValue,
                         (e1, e2) -> e2, LinkedHashMap::new));
     }
@@ -183,13 +428,15 @@ public class MusicFestivalCache {
     /**
      * Sorts bands under this record label in alphabetically ascending order by band name
      * @param recordLabel
+     * @param nameComparator
      * @return
      */
-    private LinkedHashMap<String, com.music.festival.demo.model.Band> getSorterBands(RecordLabel recordLabel) {
+    private LinkedHashMap<String, com.music.festival.demo.model.Band> getSorterBands(RecordLabel recordLabel,
+                                                                                    Comparator<String> nameComparator) {
         return recordLabel.getBands()
                 .entrySet()
                 .stream()
-                .sorted(comparingByKey())
+                .sorted(comparingByKey(nameComparator))
                 .collect(toMap(Map.Entry::getKey, Map.Entry::getValue,
                         (e1, e2) -> e2, LinkedHashMap::new));
     }
@@ -197,12 +444,14 @@ public class MusicFestivalCache {
     /**
      * Sorts record labels in alphabetically ascending order by record label name
      * @param recordLabelsMap
+     * @param nameComparator
      * @return
      */
-    private LinkedHashMap<String, RecordLabel> getSorterRecordLabels(Map<String, RecordLabel> recordLabelsMap) {
+    private LinkedHashMap<String, RecordLabel> getSorterRecordLabels(Map<String, RecordLabel> recordLabelsMap,
+                                                                    Comparator<String> nameComparator) {
         return recordLabelsMap.entrySet()
                 .stream()
-                .sorted(comparingByKey())
+                .sorted(comparingByKey(nameComparator))
                 .collect(toMap(Map.Entry::getKey, Map.Entry::getValue,
                         (e1, e2) -> e2, LinkedHashMap::new));
     }
@@ -211,15 +460,18 @@ public class MusicFestivalCache {
      * Returns a record label from the given map. Creates a new map entry if it does not exist.
      * @param recordLabelsMap
      * @param recordLabelName
+     * @param statisticsCollector
      * @return
      */
-    private RecordLabel createOrGetRecordLabelFromMap(Map<String, RecordLabel> recordLabelsMap, String recordLabelName) {
+    private RecordLabel createOrGetRecordLabelFromMap(Map<String, RecordLabel> recordLabelsMap, String recordLabelName,
+                                                      FestivalStatisticsCollector statisticsCollector) {
         RecordLabel recordLabel = new RecordLabel(recordLabelName);
         if(recordLabelsMap.containsKey(recordLabelName)) {
             recordLabel = recordLabelsMap.get(recordLabelName);
         } else {
             recordLabelsMap.put(recordLabelName, recordLabel);
-            LOGGER.debug("Creating a new record label entry in map for " + recordLabelName);
+            statisticsCollector.recordLabelAdded(recordLabelName);
+            LOGGER.debug("Creating a new record label entry in map for {}", recordLabelName);
         }
         return recordLabel;
     }
@@ -242,9 +494,11 @@ public class MusicFestivalCache {
      * Returns band by given band name from the record label. Creates one if it does not exist.
      * @param bandName
      * @param recordLabel
+     * @param statisticsCollector
      * @return
      */
-    private com.music.festival.demo.model.Band createOrGetBandByNameFromRecordLabel(String bandName, RecordLabel recordLabel) {
+    private com.music.festival.demo.model.Band createOrGetBandByNameFromRecordLabel(String bandName, RecordLabel recordLabel,
+                                                                                   FestivalStatisticsCollector statisticsCollector) {
         Map<String, com.music.festival.demo.model.Band> recordLabelBands = recordLabel.getBands();
         if(recordLabelBands == null) {
             recordLabelBands = new HashMap<String, com.music.festival.demo.model.Band>();
@@ -255,7 +509,8 @@ public class MusicFestivalCache {
             recordLabelBand = recordLabelBands.get(bandName);
         } else {
             recordLabelBands.put(bandName, recordLabelBand);
-            LOGGER.debug("Added band " + bandName + " to record label " + recordLabel.getName());
+            statisticsCollector.bandAdded(recordLabel.getName(), bandName);
+            LOGGER.debug("Added band {} to record label {}", bandName, recordLabel.getName());
         }
         return recordLabelBand;
     }
@@ -0,0 +1,19 @@
+package com.music.festival.demo.cache;
+
+/**
+ * Storage backend for the cached festival data.
+ */
+public enum SnapshotStore {
+
+    /**
+     * Keep record labels, bands and festivals as model objects on the heap.
+     */
+    HEAP,
+
+    /**
+     * Keep record labels, bands and festivals in direct buffers outside of the heap,
+     * so that a large catalogue does not add to garbage collection pauses.
+     * The snapshot is copied from the restructured model objects, so the refresh itself still peaks at both copies.
+     */
+    OFF_HEAP
+}
@@ -0,0 +1,16 @@
+package com.music.festival.demo.config;
+
+import com.music.festival.demo.rest.server.FestivalDataChangeFeedResource;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.springframework.stereotype.Component;
+
+/**
+ * Jersey configuration registering the REST resources exposed by this application.
+ */
+@Component
+public class JerseyConfig extends ResourceConfig {
+
+    public JerseyConfig() {
+        register(FestivalDataChangeFeedResource.class);
+    }
+}
@@ -0,0 +1,282 @@
+package com.music.festival.demo.external;
+
+import com.music.festival.demo.cache.CollationMode;
+import com.music.festival.demo.cache.FestivalNameComparator;
+import com.music.festival.demo.model.CatalogueEntry;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Sorts catalogue entries that do not have to fit in memory.
+ * Entries are buffered until the memory budget is used up, then sorted and spilled to a run file on disk.
+ * Runs are merged k-way into the consumer, with intermediate merge passes while there are more runs than the merge fan-in.
+ * Entries are ordered by record label, band and festival name, duplicates are dropped.
+ * Not thread safe.
+ */
+class CatalogueEntrySorter implements Closeable {
+
+    /**
+     * Rough heap footprint of an entry, its list slot and its three strings, excluding their characters
+     */
+    private static final long ENTRY_OVERHEAD_BYTES = 16 + 8 + 3 * 40;
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+    private final CollationMode collationMode;
+    private final Locale locale;
+    private final long memoryBudgetBytes;
+    private final Path spillDirectory;
+    private final int mergeFanIn;
+
+    private final List<CatalogueEntry> buffer = new ArrayList<>();
+    private long bufferedBytes;
+    private List<Path> runs = new ArrayList<>();
+
+    /**
+     * @param collationMode ordering of names
+     * @param locale locale used in {@link CollationMode#LOCALE} mode
+     * @param memoryBudgetBytes approximate heap used for buffered entries before they are spilled
+     * @param spillDirectory directory for run files
+     * @param mergeFanIn maximum number of runs merged at once
+     */
+    CatalogueEntrySorter(CollationMode collationMode, Locale locale, long memoryBudgetBytes, Path spillDirectory, int mergeFanIn) {
+        if(mergeFanIn < 2) {
+            throw new IllegalArgumentException("Merge fan-in must be at least 2.");
+        }
+        this.collationMode = collationMode;
+        this.locale = locale;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.spillDirectory = spillDirectory;
+        this.mergeFanIn = mergeFanIn;
+    }
+
+    /**
+     * Adds an entry, spilling buffered entries to disk once the memory budget is used up.
+     * @param entry
+     * @throws IOException
+     */
+    void add(CatalogueEntry entry) throws IOException {
+        buffer.add(entry);
+        bufferedBytes += ENTRY_OVERHEAD_BYTES
+                + 2L * (entry.getRecordLabel().length() + entry.getBand().length() + entry.getFestival().length());
+        if(bufferedBytes >= memoryBudgetBytes) {
+            spill();
+        }
+    }
+
+    /**
+     * Number of run files spilled so far.
+     * @return
+     */
+    int getRunCount() {
+        return runs.size();
+    }
+
+    /**
+     * Hands all distinct entries to the consumer in sort order.
+     * @param entryConsumer
+     * @throws IOException
+     */
+    void merge(Consumer<CatalogueEntry> entryConsumer) throws IOException {
+        // Everything fit in memory, no need to touch the disk
+        if(runs.isEmpty()) {
+            buffer.sort(getEntryComparator(true));
+            forEachDistinct(buffer.iterator(), entryConsumer);
+            buffer.clear();
+            return;
+        }
+
+        if(!buffer.isEmpty()) {
+            spill();
+        }
+
+        // Intermediate passes until all runs can be merged at once
+        while(runs.size() > mergeFanIn) {
+            List<Path> mergedRuns = new ArrayList<>();
+            for(int i = 0; i < runs.size(); i += mergeFanIn) {
+                List<Path> group = runs.subList(i, Math.min(i + mergeFanIn, runs.size()));
+                Path mergedRun = createRunFile();
+                mergedRuns.add(mergedRun);
+                try (RunWriter runWriter = new RunWriter(mergedRun)) {
+                    mergeRuns(group, runWriter::writeUnchecked);
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                deleteRuns(group);
+            }
+            runs = mergedRuns;
+        }
+
+        mergeRuns(runs, entryConsumer);
+    }
+
+    /**
+     * Deletes all run files.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        deleteRuns(runs);
+        runs = new ArrayList<>();
+        buffer.clear();
+    }
+
+    private void spill() throws IOException {
+        // A new comparator per run keeps cached collation keys within the memory budget
+        buffer.sort(getEntryComparator(true));
+        Path run = createRunFile();
+        runs.add(run);
+        try (RunWriter runWriter = new RunWriter(run)) {
+            forEachDistinct(buffer.iterator(), runWriter::writeUnchecked);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        buffer.clear();
+        bufferedBytes = 0;
+    }
+
+    private void mergeRuns(List<Path> runsToMerge, Consumer<CatalogueEntry> entryConsumer) throws IOException {
+        Comparator<CatalogueEntry> entryComparator = getEntryComparator(false);
+        PriorityQueue<RunReader> readers = new PriorityQueue<>(runsToMerge.size(),
+                (first, second) -> entryComparator.compare(first.getHead(), second.getHead()));
+        try {
+            for(Path run : runsToMerge) {
+                RunReader reader = new RunReader(run);
+                if(reader.advance()) {
+                    readers.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+
+            CatalogueEntry previous = null;
+            while(!readers.isEmpty()) {
+                RunReader reader = readers.poll();
+                CatalogueEntry entry = reader.getHead();
+                if(!entry.equals(previous)) {
+                    entryConsumer.accept(entry);
+                    previous = entry;
+                }
+                if(reader.advance()) {
+                    readers.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+        } finally {
+            for(RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private void forEachDistinct(Iterator<CatalogueEntry> sortedEntries, Consumer<CatalogueEntry> entryConsumer) {
+        CatalogueEntry previous = null;
+        while(sortedEntries.hasNext()) {
+            CatalogueEntry entry = sortedEntries.next();
+            if(!entry.equals(previous)) {
+                entryConsumer.accept(entry);
+                previous = entry;
+            }
+        }
+    }
+
+    /**
+     * Comparator by record label, band and festival name.
+     * @param cacheCollationKeys false while merging, where the number of distinct names is unbounded
+     */
+    private Comparator<CatalogueEntry> getEntryComparator(boolean cacheCollationKeys) {
+        Comparator<String> nameComparator = FestivalNameComparator.forMode(collationMode, locale, cacheCollationKeys);
+        return Comparator.comparing(CatalogueEntry::getRecordLabel, nameComparator)
+                .thenComparing(CatalogueEntry::getBand, nameComparator)
+                .thenComparing(CatalogueEntry::getFestival, nameComparator);
+    }
+
+    private Path createRunFile() throws IOException {
+        return Files.createTempFile(spillDirectory, "festival-data-run-", ".bin");
+    }
+
+    private void deleteRuns(List<Path> runsToDelete) throws IOException {
+        for(Path run : runsToDelete) {
+            Files.deleteIfExists(run);
+        }
+    }
+
+    /**
+     * Writes entries to a run file. Every entry is preceded by a marker, and the file ends with an end marker.
+     */
+    private static class RunWriter implements Closeable {
+        private final DataOutputStream output;
+
+        RunWriter(Path run) throws IOException {
+            output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), IO_BUFFER_SIZE));
+        }
+
+        void writeUnchecked(CatalogueEntry entry) {
+            try {
+                output.writeBoolean(true);
+                writeName(entry.getRecordLabel());
+                writeName(entry.getBand());
+                writeName(entry.getFestival());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void writeName(String name) throws IOException {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.writeBoolean(false);
+            output.close();
+        }
+    }
+
+    /**
+     * Reads entries back from a run file, one entry at a time.
+     */
+    private static class RunReader implements Closeable {
+        private final DataInputStream input;
+        private CatalogueEntry head;
+
+        RunReader(Path run) throws IOException {
+            input = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), IO_BUFFER_SIZE));
+        }
+
+        CatalogueEntry getHead() {
+            return head;
+        }
+
+        /**
+         * Reads the next entry.
+         * @return false at the end of the run
+         */
+        boolean advance() throws IOException {
+            if(!input.readBoolean()) {
+                head = null;
+                return false;
+            }
+            head = new CatalogueEntry(readName(), readName(), readName());
+            return true;
+        }
+
+        private String readName() throws IOException {
+            byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+}
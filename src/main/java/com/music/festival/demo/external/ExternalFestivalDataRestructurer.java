@@ -0,0 +1,128 @@
+package com.music.festival.demo.external;
+
+import com.music.festival.demo.cache.CollationMode;
+import com.music.festival.demo.jfr.RestructureEvent;
+import com.music.festival.demo.model.CatalogueEntry;
+import com.music.festival.demo.rest.client.MusicFestivalRESTApiClient;
+import com.music.festival.demo.rest.client.exception.ResponseParsingException;
+import com.music.festival.demo.rest.client.model.Festival;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Restructures festival data that does not have to fit in memory.
+ * Festivals are streamed from the REST API as (record label, band, festival) entries into sorted runs on local disk,
+ * which are then merged in the same order as the cached record labels.
+ * Memory use is bounded by the configured budget instead of the size of the festival data.
+ */
+@Component
+public class ExternalFestivalDataRestructurer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExternalFestivalDataRestructurer.class);
+
+    @Autowired
+    private MusicFestivalRESTApiClient apiClient;
+
+    /**
+     * System property outOfCore.memoryBudgetBytes is set to 64 MB by default.
+     */
+    @Value("${outOfCore.memoryBudgetBytes:67108864}")
+    private long memoryBudgetBytes = 64 * 1024 * 1024;
+
+    /**
+     * System property outOfCore.spillDirectory is set to the temporary directory by default.
+     */
+    @Value("${outOfCore.spillDirectory:${java.io.tmpdir}}")
+    private String spillDirectory = System.getProperty("java.io.tmpdir");
+
+    /**
+     * System property outOfCore.mergeFanIn is set to 64 by default.
+     */
+    @Value("${outOfCore.mergeFanIn:64}")
+    private int mergeFanIn = 64;
+
+    @Value("${collation.mode:NATURAL}")
+    private CollationMode collationMode = CollationMode.NATURAL;
+
+    @Value("${collation.locale:en}")
+    private String collationLocale = "en";
+
+    /**
+     * Fetches and restructures festival data, handing every distinct entry to the consumer
+     * ordered by record label, band and festival name.
+     * Bands that did not play a festival come with an empty festival name.
+     * @param entryConsumer
+     * @throws ResponseParsingException when response string from REST API cannot be parsed
+     * @throws IOException when run files cannot be written or read
+     */
+    public void restructureFestivalData(Consumer<CatalogueEntry> entryConsumer) throws ResponseParsingException, IOException {
+        LOGGER.debug("Restructuring music festivals data out of core.");
+        RestructureEvent restructureEvent = new RestructureEvent();
+        restructureEvent.begin();
+        long[] entryCount = new long[1];
+        long[] restructureTime = new long[1];
+        try (CatalogueEntrySorter sorter = new CatalogueEntrySorter(collationMode, Locale.forLanguageTag(collationLocale),
+                memoryBudgetBytes, Paths.get(spillDirectory), mergeFanIn)) {
+            // Festivals are sorted into runs while the response is fetched and parsed, the event spans the fetch
+            try {
+                apiClient.getFestivals(festival -> {
+                    long festivalStart = System.nanoTime();
+                    addFestival(sorter, festival);
+                    restructureTime[0] += System.nanoTime() - festivalStart;
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            LOGGER.debug("Merging {} sorted runs.", sorter.getRunCount());
+            long mergeStart = System.nanoTime();
+            sorter.merge(entry -> {
+                entryCount[0]++;
+                entryConsumer.accept(entry);
+            });
+
+            // Time spent in the consumer is included, entries are handed over while merging
+            restructureEvent.end();
+            restructureTime[0] += System.nanoTime() - mergeStart;
+            if(restructureEvent.shouldCommit()) {
+                restructureEvent.outOfCore = true;
+                restructureEvent.fetchOverlapped = true;
+                restructureEvent.restructureTime = restructureTime[0];
+                restructureEvent.entryCount = entryCount[0];
+                restructureEvent.runCount = sorter.getRunCount();
+                restructureEvent.commit();
+            }
+        }
+    }
+
+    /**
+     * Adds an entry for every band of the festival.
+     * @param sorter
+     * @param festival
+     */
+    private void addFestival(CatalogueEntrySorter sorter, Festival festival) {
+        if(festival.getBands() == null) {
+            return;
+        }
+        final String festivalName = Objects.toString(festival.getName(), "");
+        festival.getBands().forEach(band -> {
+            String bandName = Objects.toString(band.getName(), "");
+            String recordLabelName = Objects.toString(band.getRecordLabel(), "");
+            try {
+                sorter.add(new CatalogueEntry(recordLabelName, bandName, festivalName));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+}
@@ -0,0 +1,244 @@
+package com.music.festival.demo.feed;
+
+import com.music.festival.demo.model.FestivalDataChangeEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Feed of changes made to the festival data by cache refreshes.
+ * Delivers change events to registered listeners and keeps a bounded history of recent events,
+ * so that listeners can resume from the last snapshot version they have seen.
+ * Every listener has its own bounded queue drained on a feed thread, so publishing never waits for a listener.
+ * A listener whose queue is full is removed from the feed and told so after its queued events.
+ */
+@Component
+public class FestivalDataChangeFeed {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FestivalDataChangeFeed.class);
+
+    /**
+     * System property changeFeed.historySize is set to 1000 by default.
+     */
+    @Value("${changeFeed.historySize:1000}")
+    private int historySize = 1000;
+
+    /**
+     * System property changeFeed.listenerQueueSize is set to 100 by default.
+     * Events not yet delivered to a listener, on top of the ones replayed when it registers.
+     */
+    @Value("${changeFeed.listenerQueueSize:100}")
+    private int listenerQueueSize = 100;
+
+    private final Deque<FestivalDataChangeEvent> history = new ArrayDeque<>();
+    private final Map<FestivalDataChangeListener, ListenerQueue> listeners = new LinkedHashMap<>();
+    private final ExecutorService deliveryExecutor = Executors.newCachedThreadPool(new ChangeDeliveryThreadFactory());
+
+    /**
+     * Records the event in the history and queues it for all listeners.
+     * @param changeEvent
+     */
+    public synchronized void publish(FestivalDataChangeEvent changeEvent) {
+        history.addLast(changeEvent);
+        while(history.size() > historySize) {
+            history.removeFirst();
+        }
+
+        LOGGER.debug("Publishing festival data change event for version {}.", changeEvent.getVersion());
+        Iterator<ListenerQueue> listenerQueues = listeners.values().iterator();
+        while(listenerQueues.hasNext()) {
+            ListenerQueue listenerQueue = listenerQueues.next();
+            if(!listenerQueue.offer(changeEvent)) {
+                LOGGER.warn("Festival data change listener fell behind at version {}, removing it from the feed.", changeEvent.getVersion());
+                listenerQueues.remove();
+                listenerQueue.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Registers a listener for change events published from now on.
+     * @param listener
+     */
+    public synchronized void addListener(FestivalDataChangeListener listener) {
+        listeners.put(listener, new ListenerQueue(listener, listenerQueueSize));
+    }
+
+    /**
+     * Registers a listener after queueing the events it missed since the given version.
+     * @param listener
+     * @param lastSeenVersion last snapshot version seen by the listener, 0 if none
+     * @return false if the history no longer reaches back to the given version, in which case no events are replayed
+     */
+    public synchronized boolean addListener(FestivalDataChangeListener listener, long lastSeenVersion) {
+        Optional<List<FestivalDataChangeEvent>> missedEvents = getEventsSince(lastSeenVersion);
+        int missedEventCount = missedEvents.map(List::size).orElse(0);
+        ListenerQueue listenerQueue = new ListenerQueue(listener, listenerQueueSize + missedEventCount);
+        missedEvents.ifPresent(events -> events.forEach(listenerQueue::offer));
+        listeners.put(listener, listenerQueue);
+        return missedEvents.isPresent();
+    }
+
+    /**
+     * Unregisters a listener, events queued for it are no longer delivered.
+     * @param listener
+     */
+    public synchronized void removeListener(FestivalDataChangeListener listener) {
+        ListenerQueue listenerQueue = listeners.remove(listener);
+        if(listenerQueue != null) {
+            listenerQueue.remove();
+        }
+    }
+
+    /**
+     * Get the number of registered listeners.
+     * @return
+     */
+    public synchronized int getListenerCount() {
+        return listeners.size();
+    }
+
+    /**
+     * Get the events published after the given version.
+     * @param lastSeenVersion
+     * @return events in version order, empty if the history no longer reaches back to the given version
+     */
+    public synchronized Optional<List<FestivalDataChangeEvent>> getEventsSince(long lastSeenVersion) {
+        List<FestivalDataChangeEvent> events = new ArrayList<>();
+
+        // Versions from before a restart are unknown to this feed
+        if(lastSeenVersion > getLatestVersion()) {
+            return Optional.empty();
+        }
+        if(history.isEmpty()) {
+            return Optional.of(events);
+        }
+        if(history.peekFirst().getVersion() > lastSeenVersion + 1) {
+            return Optional.empty();
+        }
+        history.forEach(changeEvent -> {
+            if(changeEvent.getVersion() > lastSeenVersion) {
+                events.add(changeEvent);
+            }
+        });
+        return Optional.of(events);
+    }
+
+    /**
+     * Get the version of the latest published event.
+     * @return latest version, 0 if nothing has been published
+     */
+    public synchronized long getLatestVersion() {
+        return history.isEmpty() ? 0 : history.peekLast().getVersion();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        deliveryExecutor.shutdownNow();
+    }
+
+    private void notifyListener(FestivalDataChangeListener listener, FestivalDataChangeEvent changeEvent) {
+        try {
+            listener.onFestivalDataChanged(changeEvent);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Festival data change listener failed for version {}. Cause: {}", changeEvent.getVersion(), e.getMessage());
+        }
+    }
+
+    private void notifyDisconnected(FestivalDataChangeListener listener) {
+        try {
+            listener.onFeedDisconnected();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Festival data change listener failed on disconnect. Cause: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Bounded queue of events for one listener, drained by at most one feed thread at a time.
+     */
+    private class ListenerQueue implements Runnable {
+        private final FestivalDataChangeListener listener;
+        private final BlockingQueue<FestivalDataChangeEvent> events;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean disconnectNotified = new AtomicBoolean();
+        private volatile boolean disconnected;
+        private volatile boolean removed;
+
+        ListenerQueue(FestivalDataChangeListener listener, int capacity) {
+            this.listener = listener;
+            this.events = new ArrayBlockingQueue<>(Math.max(capacity, 1));
+        }
+
+        /**
+         * Queues the event without waiting.
+         * @return false if the queue is full
+         */
+        boolean offer(FestivalDataChangeEvent changeEvent) {
+            if(!events.offer(changeEvent)) {
+                return false;
+            }
+            schedule();
+            return true;
+        }
+
+        /**
+         * Delivers the queued events, then tells the listener it was removed from the feed.
+         */
+        void disconnect() {
+            disconnected = true;
+            schedule();
+        }
+
+        /**
+         * Drops the queued events.
+         */
+        void remove() {
+            removed = true;
+            events.clear();
+        }
+
+        private void schedule() {
+            if(scheduled.compareAndSet(false, true)) {
+                try {
+                    deliveryExecutor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    LOGGER.debug("Change feed is shut down, event not delivered.");
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            do {
+                FestivalDataChangeEvent changeEvent;
+                while(!removed && (changeEvent = events.poll()) != null) {
+                    notifyListener(listener, changeEvent);
+                }
+                scheduled.set(false);
+                // An event queued after the last poll found the flag still set, so pick it up here
+            } while(!removed && !events.isEmpty() && scheduled.compareAndSet(false, true));
+
+            if(disconnected && !removed && events.isEmpty() && disconnectNotified.compareAndSet(false, true)) {
+                notifyDisconnected(listener);
+            }
+        }
+    }
+
+    private static class ChangeDeliveryThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "change-feed-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
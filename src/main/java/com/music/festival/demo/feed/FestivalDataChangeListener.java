@@ -0,0 +1,23 @@
+package com.music.festival.demo.feed;
+
+import com.music.festival.demo.model.FestivalDataChangeEvent;
+
+/**
+ * Listener notified when a refresh changes the festival data.
+ * Events are delivered on a feed thread, never on the thread refreshing the cache.
+ */
+public interface FestivalDataChangeListener {
+
+    /**
+     * Invoked once for every change event, in version order.
+     * @param changeEvent
+     */
+    void onFestivalDataChanged(FestivalDataChangeEvent changeEvent);
+
+    /**
+     * Invoked once after the listener fell too far behind and was removed from the feed.
+     * Events queued before that are delivered first, the listener can register again from the last version it has seen.
+     */
+    default void onFeedDisconnected() {
+    }
+}
@@ -0,0 +1,33 @@
+package com.music.festival.demo.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event for rendering and writing the output file.
+ */
+@Name("com.music.festival.demo.OutputWrite")
+@Label("Output Write")
+@Description("Rendering and writing of the restructured festival data")
+@Category({"Music Festival Demo", "Output"})
+public class OutputWriteEvent extends Event {
+
+    @Label("Output File")
+    @Description("Output file, or shard index for sharded output")
+    public String outputFile;
+
+    @Label("Out Of Core")
+    @Description("True if lines were written from entries merged on disk")
+    public boolean outOfCore;
+
+    @Label("Line Count")
+    public long lineCount;
+
+    @Label("File Size")
+    @Description("Size of the output file, or of all shards for sharded output")
+    @DataAmount(DataAmount.BYTES)
+    public long fileSize;
+
+    @Label("Shard Count")
+    @Description("Number of shards written, 0 for a single output file")
+    public int shardCount;
+}
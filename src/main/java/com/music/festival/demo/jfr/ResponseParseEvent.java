@@ -0,0 +1,29 @@
+package com.music.festival.demo.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event for deserializing the festivals response.
+ */
+@Name("com.music.festival.demo.ResponseParse")
+@Label("Response Parse")
+@Description("Deserialization of the festivals response")
+@Category({"Music Festival Demo", "Refresh"})
+public class ResponseParseEvent extends Event {
+
+    @Label("Streaming")
+    @Description("True if festivals were parsed from the response stream one at a time")
+    public boolean streaming;
+
+    @Label("Response Characters")
+    @Description("Length of the buffered response string, -1 for streamed responses")
+    public long responseCharacters;
+
+    @Label("Response Bytes")
+    @Description("Bytes parsed from the response stream, -1 for buffered responses")
+    @DataAmount(DataAmount.BYTES)
+    public long responseBytes;
+
+    @Label("Festival Count")
+    public int festivalCount;
+}
@@ -0,0 +1,46 @@
+package com.music.festival.demo.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event for restructuring festival data into record labels, bands and festivals.
+ */
+@Name("com.music.festival.demo.Restructure")
+@Label("Restructure")
+@Description("Restructuring of festival data by record label")
+@Category({"Music Festival Demo", "Refresh"})
+public class RestructureEvent extends Event {
+
+    @Label("Out Of Core")
+    @Description("True if the festival data was restructured with sorted runs on disk")
+    public boolean outOfCore;
+
+    @Label("Fetch Overlapped")
+    @Description("True if festivals were restructured while the response was fetched and parsed, the duration then includes the fetch")
+    public boolean fetchOverlapped;
+
+    @Label("Restructure Time")
+    @Description("Time spent restructuring, without waiting for festivals to be fetched and parsed")
+    @Timespan(Timespan.NANOSECONDS)
+    public long restructureTime;
+
+    @Label("Festival Count")
+    @Description("Festivals received from the API, 0 when restructured out of core")
+    public int festivalCount;
+
+    @Label("Record Label Count")
+    @Description("Distinct record labels, 0 when restructured out of core")
+    public int recordLabelCount;
+
+    @Label("Band Count")
+    @Description("Distinct (record label, band) pairs, 0 when restructured out of core")
+    public int bandCount;
+
+    @Label("Entry Count")
+    @Description("Distinct (record label, band, festival) entries produced")
+    public long entryCount;
+
+    @Label("Run Count")
+    @Description("Sorted runs spilled to disk, 0 when restructured in memory")
+    public int runCount;
+}
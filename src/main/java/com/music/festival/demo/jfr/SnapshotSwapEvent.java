@@ -0,0 +1,32 @@
+package com.music.festival.demo.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event for replacing the cached festival data with a freshly restructured snapshot.
+ */
+@Name("com.music.festival.demo.SnapshotSwap")
+@Label("Snapshot Swap")
+@Description("Replacement of the cached festival data")
+@Category({"Music Festival Demo", "Refresh"})
+public class SnapshotSwapEvent extends Event {
+
+    @Label("Version")
+    @Description("Snapshot version after the swap")
+    public long version;
+
+    @Label("Changed")
+    @Description("True if the refresh changed the festival data")
+    public boolean changed;
+
+    @Label("Record Label Count")
+    public int recordLabelCount;
+
+    @Label("Removed Record Label Count")
+    public int removedRecordLabelCount;
+
+    @Label("Off-heap Bytes")
+    @Description("Bytes of festival data stored outside of the heap, 0 for the heap store")
+    @DataAmount(DataAmount.BYTES)
+    public long offHeapBytes;
+}
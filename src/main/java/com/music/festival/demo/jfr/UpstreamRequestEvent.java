@@ -0,0 +1,34 @@
+package com.music.festival.demo.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event for a single attempt to call the REST API, including the backoff scheduled after it.
+ */
+@Name("com.music.festival.demo.UpstreamRequest")
+@Label("Upstream Request")
+@Description("Attempt to call the festivals REST API")
+@Category({"Music Festival Demo", "Refresh"})
+public class UpstreamRequestEvent extends Event {
+
+    @Label("URI")
+    public String uri;
+
+    @Label("Attempt")
+    @Description("Attempt number, starting at 1")
+    public int attempt;
+
+    @Label("Status")
+    @Description("HTTP status code of the response")
+    public int status;
+
+    @Label("Response Length")
+    @Description("Content length of the response, -1 if not known")
+    @DataAmount(DataAmount.BYTES)
+    public long responseLength;
+
+    @Label("Backoff Wait")
+    @Description("Time waited before the next attempt, 0 if there is none")
+    @Timespan(Timespan.MILLISECONDS)
+    public long backoffWait;
+}
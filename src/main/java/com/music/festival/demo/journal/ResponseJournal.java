@@ -0,0 +1,450 @@
+package com.music.festival.demo.journal;
+
+import com.google.common.io.ByteStreams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import java.util.zip.*;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Local journal of raw festivals responses received from the REST API.
+ * Every successful response body is appended as a deflate compressed record with a CRC32 checksum of the body.
+ * Records go to segment files that are rotated at a size limit, only the newest segments are kept.
+ * The newest intact record can be replayed instead of calling the API, or used as fallback when the API fails.
+ * Records with a checksum mismatch or cut short by a crash are skipped.
+ */
+@Component
+public class ResponseJournal {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResponseJournal.class);
+
+    static final int RECORD_MAGIC = 0x464A524E;
+    static final int HEADER_BYTES = 4 + 8 + 8 + 8 + 8;
+    private static final String SEGMENT_PREFIX = "responses-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final int MAX_TRAILING_BYTES = 8 * 1024;
+
+    /**
+     * System property journal.enabled is set to FALSE by default.
+     */
+    @Value("${journal.enabled:false}")
+    private boolean enabled = false;
+
+    /**
+     * System property journal.directory is set to 'journal' by default.
+     */
+    @Value("${journal.directory:journal}")
+    private String directory = "journal";
+
+    /**
+     * System property journal.maxSegmentBytes is set to 64 MB by default.
+     * A new segment is started once a record would take the current one past this size.
+     */
+    @Value("${journal.maxSegmentBytes:67108864}")
+    private long maxSegmentBytes = 64L * 1024 * 1024;
+
+    /**
+     * System property journal.maxSegments is set to 4 by default.
+     */
+    @Value("${journal.maxSegments:4}")
+    private int maxSegments = 4;
+
+    /**
+     * System property journal.replay is set to FALSE by default.
+     * TRUE serves the newest journaled response instead of calling the API.
+     */
+    @Value("${journal.replay:false}")
+    private boolean replayEnabled = false;
+
+    /**
+     * System property journal.fallbackEnabled is set to TRUE by default.
+     * Serves the newest journaled response when the API fails, if the journal is enabled.
+     */
+    @Value("${journal.fallbackEnabled:true}")
+    private boolean fallbackEnabled = true;
+
+    /**
+     * True if successful responses are journaled.
+     * @return
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * True if the newest journaled response is served instead of calling the API.
+     * @return
+     */
+    public boolean isReplayEnabled() {
+        return replayEnabled;
+    }
+
+    /**
+     * True if the newest journaled response is served when the API fails.
+     * @return
+     */
+    public boolean isFallbackEnabled() {
+        return enabled && fallbackEnabled;
+    }
+
+    /**
+     * Appends a response body as a new record.
+     * @param payload response body
+     * @throws IOException when the record cannot be written
+     */
+    public void append(byte[] payload) throws IOException {
+        ByteArrayOutputStream compressedPayload = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflaterStream = new DeflaterOutputStream(compressedPayload)) {
+            deflaterStream.write(payload);
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(payload);
+        appendRecord(compressedPayload.toByteArray(), payload.length, checksum.getValue());
+    }
+
+    /**
+     * Wraps a response stream so that the body is recorded as it is read.
+     * The record is only appended by {@link RecordingInputStream#commit()}, once the body has been parsed,
+     * so that a body that turns out to be invalid never replaces the newest intact record.
+     * Partly read bodies are not journaled. Up to 8 KB left unread after the end of the document are read on close.
+     * Failures to journal are logged and do not fail reading the response.
+     * @param responseStream
+     * @return stream reading through to the response stream
+     */
+    public RecordingInputStream recording(InputStream responseStream) {
+        return new RecordingInputStream(responseStream);
+    }
+
+    /**
+     * Opens the newest intact record for reading.
+     * @return decompressed response body, to be closed by the caller, empty if no intact record exists
+     * @throws IOException when the journal cannot be read
+     */
+    public Optional<InputStream> openLatest() throws IOException {
+        List<Path> segments = getSegments();
+        Collections.reverse(segments);
+        for(Path segment : segments) {
+            List<RecordLocation> records = scanSegment(segment);
+            Collections.reverse(records);
+            for(RecordLocation record : records) {
+                if(isIntact(record)) {
+                    LOGGER.debug("Reading journaled response of {} from {}", record.timestamp, segment);
+                    return Optional.of(openRecord(record));
+                }
+                LOGGER.warn("Skipping journaled response with checksum mismatch at offset {} of {}", record.offset, segment);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Reads the newest intact record.
+     * @return decompressed response body, empty if no intact record exists
+     * @throws IOException when the journal cannot be read
+     */
+    public Optional<byte[]> readLatest() throws IOException {
+        Optional<InputStream> latestRecord = openLatest();
+        if(!latestRecord.isPresent()) {
+            return Optional.empty();
+        }
+        try (InputStream recordStream = latestRecord.get()) {
+            return Optional.of(ByteStreams.toByteArray(recordStream));
+        }
+    }
+
+    /**
+     * Writes a record to the current segment, starting a new segment at the size limit.
+     */
+    private synchronized void appendRecord(byte[] compressedPayload, long payloadLength, long checksum) throws IOException {
+        Path journalDirectory = Files.createDirectories(Paths.get(directory));
+        List<Path> segments = getSegments();
+        int segmentNumber = segments.isEmpty() ? 0 : getSegmentNumber(segments.get(segments.size() - 1));
+        Path segment = journalDirectory.resolve(getSegmentName(segmentNumber));
+        if(Files.exists(segment)) {
+            truncateIncompleteRecords(segment);
+        }
+        if(Files.exists(segment) && Files.size(segment) > 0
+                && Files.size(segment) + HEADER_BYTES + compressedPayload.length > maxSegmentBytes) {
+            segment = journalDirectory.resolve(getSegmentName(segmentNumber + 1));
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + compressedPayload.length);
+        record.putInt(RECORD_MAGIC)
+                .putLong(System.currentTimeMillis())
+                .putLong(payloadLength)
+                .putLong(checksum)
+                .putLong(compressedPayload.length)
+                .put(compressedPayload)
+                .flip();
+        try (FileChannel segmentChannel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while(record.hasRemaining()) {
+                segmentChannel.write(record);
+            }
+            segmentChannel.force(false);
+        }
+        LOGGER.debug("Journaled response of {} bytes to {}", payloadLength, segment);
+
+        deleteOldSegments();
+    }
+
+    /**
+     * Cuts off a record left incomplete by a crash, so that records appended after it can be found.
+     */
+    private void truncateIncompleteRecords(Path segment) throws IOException {
+        List<RecordLocation> records = scanSegment(segment);
+        long validLength = records.isEmpty() ? 0 : records.get(records.size() - 1).getEnd();
+        try (FileChannel segmentChannel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            if(segmentChannel.size() > validLength) {
+                LOGGER.warn("Truncating incomplete journal record at offset {} of {}", validLength, segment);
+                segmentChannel.truncate(validLength);
+            }
+        }
+    }
+
+    private void deleteOldSegments() throws IOException {
+        List<Path> segments = getSegments();
+        for(int i = 0; i < segments.size() - maxSegments; i++) {
+            Files.deleteIfExists(segments.get(i));
+            LOGGER.debug("Deleted journal segment {}", segments.get(i));
+        }
+    }
+
+    /**
+     * Segments ordered from oldest to newest.
+     */
+    private List<Path> getSegments() throws IOException {
+        Path journalDirectory = Paths.get(directory);
+        if(!Files.isDirectory(journalDirectory)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(journalDirectory)) {
+            return files.filter(file -> isSegment(file.getFileName().toString()))
+                    .sorted()
+                    .collect(toList());
+        }
+    }
+
+    /**
+     * Reads record headers of a segment, up to the first record that is incomplete or not a record.
+     */
+    private List<RecordLocation> scanSegment(Path segment) throws IOException {
+        List<RecordLocation> records = new ArrayList<>();
+        try (FileChannel segmentChannel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            long segmentSize = segmentChannel.size();
+            long offset = 0;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while(offset + HEADER_BYTES <= segmentSize) {
+                header.clear();
+                readFully(segmentChannel, header, offset);
+                header.flip();
+                if(header.remaining() < HEADER_BYTES || header.getInt() != RECORD_MAGIC) {
+                    break;
+                }
+                long timestamp = header.getLong();
+                long payloadLength = header.getLong();
+                long checksum = header.getLong();
+                long compressedLength = header.getLong();
+                if(compressedLength < 0 || offset + HEADER_BYTES + compressedLength > segmentSize) {
+                    break;
+                }
+                records.add(new RecordLocation(segment, offset, timestamp, payloadLength, checksum, compressedLength));
+                offset = records.get(records.size() - 1).getEnd();
+            }
+        }
+        return records;
+    }
+
+    private static void readFully(FileChannel segmentChannel, ByteBuffer buffer, long offset) throws IOException {
+        while(buffer.hasRemaining()) {
+            if(segmentChannel.read(buffer, offset + buffer.position()) < 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Decompresses a record once to compare its length and checksum with the header.
+     */
+    private boolean isIntact(RecordLocation record) throws IOException {
+        CRC32 checksum = new CRC32();
+        try (CheckedInputStream recordStream = new CheckedInputStream(openRecord(record), checksum)) {
+            long payloadLength = ByteStreams.exhaust(recordStream);
+            return payloadLength == record.payloadLength && checksum.getValue() == record.checksum;
+        } catch (ZipException | EOFException e) {
+            // Compressed payload is damaged
+            return false;
+        }
+    }
+
+    private InputStream openRecord(RecordLocation record) throws IOException {
+        FileChannel segmentChannel = FileChannel.open(record.segment, StandardOpenOption.READ);
+        segmentChannel.position(record.offset + HEADER_BYTES);
+        InputStream compressedStream = ByteStreams.limit(new BufferedInputStream(Channels.newInputStream(segmentChannel)), record.compressedLength);
+        return new InflaterInputStream(compressedStream) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                segmentChannel.close();
+            }
+        };
+    }
+
+    private static boolean isSegment(String fileName) {
+        return fileName.startsWith(SEGMENT_PREFIX) && fileName.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static String getSegmentName(int segmentNumber) {
+        return String.format("%s%010d%s", SEGMENT_PREFIX, segmentNumber, SEGMENT_SUFFIX);
+    }
+
+    private static int getSegmentNumber(Path segment) {
+        String fileName = segment.getFileName().toString();
+        return Integer.parseInt(fileName.substring(SEGMENT_PREFIX.length(), fileName.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Position and header of a record within a segment.
+     */
+    private static class RecordLocation {
+        private final Path segment;
+        private final long offset;
+        private final long timestamp;
+        private final long payloadLength;
+        private final long checksum;
+        private final long compressedLength;
+
+        RecordLocation(Path segment, long offset, long timestamp, long payloadLength, long checksum, long compressedLength) {
+            this.segment = segment;
+            this.offset = offset;
+            this.timestamp = timestamp;
+            this.payloadLength = payloadLength;
+            this.checksum = checksum;
+            this.compressedLength = compressedLength;
+        }
+
+        long getEnd() {
+            return offset + HEADER_BYTES + compressedLength;
+        }
+    }
+
+    /**
+     * Compresses and checksums the body while it is read, and journals it when committed.
+     */
+    public class RecordingInputStream extends FilterInputStream {
+        private final ByteArrayOutputStream compressedPayload = new ByteArrayOutputStream();
+        private final DeflaterOutputStream deflaterStream = new DeflaterOutputStream(compressedPayload);
+        private final CRC32 checksum = new CRC32();
+        private long payloadLength;
+        private boolean endOfStream;
+        private boolean closed;
+        private boolean committed;
+
+        RecordingInputStream(InputStream responseStream) {
+            super(responseStream);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if(value < 0) {
+                endOfStream = true;
+            } else {
+                record(new byte[]{(byte) value}, 0, 1);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if(read < 0) {
+                endOfStream = true;
+            } else {
+                record(buffer, offset, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long length) throws IOException {
+            // Skipped bytes would be missing from the journal
+            byte[] buffer = new byte[(int) Math.min(length, 8192)];
+            int read = read(buffer, 0, buffer.length);
+            return Math.max(read, 0);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(closed) {
+                return;
+            }
+            closed = true;
+            try {
+                drainTrailingBytes();
+            } catch (IOException e) {
+                // The body cannot be completed and is not journaled
+                endOfStream = false;
+            }
+            try {
+                super.close();
+            } finally {
+                deflaterStream.close();
+            }
+        }
+
+        /**
+         * Journals the body, to be called once it has been parsed without errors. Closes the stream if still open.
+         * Nothing is journaled if the body was not read to the end.
+         */
+        public void commit() {
+            if(committed) {
+                return;
+            }
+            committed = true;
+            try {
+                close();
+                if(endOfStream && payloadLength > 0) {
+                    appendRecord(compressedPayload.toByteArray(), payloadLength, checksum.getValue());
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Could not journal response. Cause: {}", e.getMessage());
+            }
+        }
+
+        /**
+         * Parsers stop reading at the end of the document, bytes after it are still part of the body.
+         * Only a few are read, a body given up on halfway is not worth reading to the end.
+         */
+        private void drainTrailingBytes() throws IOException {
+            byte[] buffer = new byte[1024];
+            for(int i = 0; i < MAX_TRAILING_BYTES / buffer.length && !endOfStream; i++) {
+                read(buffer, 0, buffer.length);
+            }
+        }
+
+        private void record(byte[] buffer, int offset, int length) throws IOException {
+            deflaterStream.write(buffer, offset, length);
+            checksum.update(buffer, offset, length);
+            payloadLength += length;
+        }
+    }
+}
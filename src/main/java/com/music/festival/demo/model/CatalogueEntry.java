@@ -0,0 +1,17 @@
+package com.music.festival.demo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Model class to identify a band or a festival attended by a band within the catalogue.
+ * The festival name is null for entries that identify a band.
+ */
+@Getter @AllArgsConstructor @EqualsAndHashCode @ToString
+public class CatalogueEntry {
+    private final String recordLabel;
+    private final String band;
+    private final String festival;
+}
@@ -0,0 +1,41 @@
+package com.music.festival.demo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Model class to represent the changes made to the catalogue by a refresh.
+ * Every event carries the snapshot version it produced, versions increase monotonically.
+ */
+@Getter @AllArgsConstructor
+public class FestivalDataChangeEvent {
+
+    /**
+     * Version of the snapshot produced by the refresh
+     */
+    private final long version;
+
+    /**
+     * Time of the refresh in milliseconds since epoch
+     */
+    private final long timestamp;
+
+    private final List<String> addedRecordLabels;
+    private final List<String> removedRecordLabels;
+    private final List<CatalogueEntry> addedBands;
+    private final List<CatalogueEntry> removedBands;
+    private final List<CatalogueEntry> addedFestivals;
+    private final List<CatalogueEntry> removedFestivals;
+
+    /**
+     * True if the refresh did not change the catalogue.
+     * @return
+     */
+    public boolean hasNoChanges() {
+        return addedRecordLabels.isEmpty() && removedRecordLabels.isEmpty()
+                && addedBands.isEmpty() && removedBands.isEmpty()
+                && addedFestivals.isEmpty() && removedFestivals.isEmpty();
+    }
+}
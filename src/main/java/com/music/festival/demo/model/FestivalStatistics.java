@@ -0,0 +1,37 @@
+package com.music.festival.demo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Model class to represent aggregated catalogue statistics.
+ * Computed once while the festival data is restructured, so that lookups do not walk the record labels again.
+ * Festivals with an empty name are not counted, since they represent bands that did not play a festival.
+ */
+@Getter @AllArgsConstructor
+public class FestivalStatistics {
+
+    /**
+     * Number of bands managed by each record label, by record label name
+     */
+    private final Map<String, Integer> bandCountByRecordLabel;
+
+    /**
+     * Number of distinct festivals attended by each band, by band name.
+     * Bands are identified by name only, festivals of bands with the same name on different record labels are counted together.
+     */
+    private final Map<String, Integer> festivalCountByBand;
+
+    /**
+     * Distinct band names ordered by festival count descending, then by name
+     */
+    private final List<String> mostBookedBands;
+
+    /**
+     * Names of record labels whose bands did not play any festival, sorted alphabetically
+     */
+    private final List<String> recordLabelsWithoutFestivals;
+}
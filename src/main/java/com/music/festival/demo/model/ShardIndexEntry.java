@@ -0,0 +1,34 @@
+package com.music.festival.demo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Model class to locate the section of a record label within sharded output files.
+ */
+@Getter @AllArgsConstructor @EqualsAndHashCode @ToString
+public class ShardIndexEntry {
+    private final String recordLabel;
+
+    /**
+     * File name of the shard, relative to the directory of the index
+     */
+    private final String shardFile;
+
+    /**
+     * Byte offset of the first line of the section within the shard
+     */
+    private final long offset;
+
+    /**
+     * Byte length of the section, including line separators
+     */
+    private final long length;
+
+    /**
+     * Number of lines of the section
+     */
+    private final int lineCount;
+}
@@ -0,0 +1,49 @@
+package com.music.festival.demo.offheap;
+
+import com.music.festival.demo.model.Band;
+import com.music.festival.demo.model.Festival;
+
+import java.util.Map;
+
+/**
+ * Flyweight band reading its name and festivals from an {@link OffHeapFestivalSnapshot}.
+ */
+final class OffHeapBand extends Band {
+
+    private final OffHeapFestivalSnapshot snapshot;
+    private final int bandIndex;
+
+    /**
+     * Name decoded on first access
+     */
+    private String decodedName;
+
+    OffHeapBand(OffHeapFestivalSnapshot snapshot, int bandIndex) {
+        super("");
+        this.snapshot = snapshot;
+        this.bandIndex = bandIndex;
+    }
+
+    @Override
+    public String getName() {
+        if(decodedName == null) {
+            decodedName = snapshot.getBandName(bandIndex);
+        }
+        return decodedName;
+    }
+
+    @Override
+    public Map<String, Festival> getFestivals() {
+        return snapshot.getFestivals(bandIndex);
+    }
+
+    @Override
+    public void setName(String name) {
+        throw new UnsupportedOperationException("Off-heap festival data is read only.");
+    }
+
+    @Override
+    public void setFestivals(Map<String, Festival> festivals) {
+        throw new UnsupportedOperationException("Off-heap festival data is read only.");
+    }
+}
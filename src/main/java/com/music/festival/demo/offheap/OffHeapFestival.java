@@ -0,0 +1,36 @@
+package com.music.festival.demo.offheap;
+
+import com.music.festival.demo.model.Festival;
+
+/**
+ * Flyweight festival reading its name from an {@link OffHeapFestivalSnapshot}.
+ */
+final class OffHeapFestival extends Festival {
+
+    private final OffHeapFestivalSnapshot snapshot;
+    private final int festivalIndex;
+
+    /**
+     * Name decoded on first access
+     */
+    private String decodedName;
+
+    OffHeapFestival(OffHeapFestivalSnapshot snapshot, int festivalIndex) {
+        super(null);
+        this.snapshot = snapshot;
+        this.festivalIndex = festivalIndex;
+    }
+
+    @Override
+    public String getName() {
+        if(decodedName == null) {
+            decodedName = snapshot.getFestivalName(festivalIndex);
+        }
+        return decodedName;
+    }
+
+    @Override
+    public void setName(String name) {
+        throw new UnsupportedOperationException("Off-heap festival data is read only.");
+    }
+}
@@ -0,0 +1,323 @@
+package com.music.festival.demo.offheap;
+
+import com.music.festival.demo.model.Band;
+import com.music.festival.demo.model.Festival;
+import com.music.festival.demo.model.RecordLabel;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Restructured festival data kept in direct buffers, outside of the garbage collected heap.
+ * Distinct names are stored once as UTF-8 in a name blob, addressed through an offset table and an open addressing hash table.
+ * Record labels, bands and festivals are tables of name ids and ranges, in the order of the restructured data.
+ * Reads return short lived flyweights implementing the read side of the model, setters are not supported.
+ * Immutable once built, the buffers are released when the snapshot is no longer reachable.
+ */
+public class OffHeapFestivalSnapshot {
+
+    private static final int RECORD_LABEL_INTS = 3;
+    private static final int BAND_INTS = 3;
+    private static final int NAME_ID = 0;
+    private static final int FIRST_CHILD = 1;
+    private static final int CHILD_COUNT = 2;
+
+    private final ByteBuffer nameBytes;
+    private final IntBuffer nameOffsets;
+    private final IntBuffer nameHashTable;
+    private final int nameHashMask;
+    private final int nameCount;
+
+    /**
+     * Name id, first band and band count of every record label
+     */
+    private final IntBuffer recordLabels;
+
+    /**
+     * Record label index by name id, -1 for names that are not a record label
+     */
+    private final IntBuffer recordLabelIndexByNameId;
+
+    /**
+     * Name id, first festival and festival count of every band of every record label
+     */
+    private final IntBuffer bands;
+
+    /**
+     * Name id of every festival of every band
+     */
+    private final IntBuffer festivals;
+
+    private final int recordLabelCount;
+    private final long offHeapBytes;
+
+    private OffHeapFestivalSnapshot(ByteBuffer nameBytes, IntBuffer nameOffsets, IntBuffer nameHashTable, int nameCount,
+                                    IntBuffer recordLabels, IntBuffer recordLabelIndexByNameId, IntBuffer bands, IntBuffer festivals,
+                                    int recordLabelCount) {
+        this.nameBytes = nameBytes;
+        this.nameOffsets = nameOffsets;
+        this.nameHashTable = nameHashTable;
+        this.nameHashMask = nameHashTable.capacity() - 1;
+        this.nameCount = nameCount;
+        this.recordLabels = recordLabels;
+        this.recordLabelIndexByNameId = recordLabelIndexByNameId;
+        this.bands = bands;
+        this.festivals = festivals;
+        this.recordLabelCount = recordLabelCount;
+        this.offHeapBytes = nameBytes.capacity()
+                + 4L * (nameOffsets.capacity() + nameHashTable.capacity() + recordLabels.capacity()
+                + recordLabelIndexByNameId.capacity() + bands.capacity() + festivals.capacity());
+    }
+
+    /**
+     * Copies restructured festival data into direct buffers.
+     * The restructured model objects stay reachable until the build is done, so a refresh briefly holds the catalogue
+     * both on the heap and off the heap, plus the name dictionary used while building. Only the steady state is off the heap.
+     * @param sortedRecordLabels record labels, with their bands and festivals, in the order reads should return them
+     * @return {@link OffHeapFestivalSnapshot}
+     * @throws ArithmeticException when the names or tables exceed the 2 GB a buffer can address
+     */
+    public static OffHeapFestivalSnapshot build(List<RecordLabel> sortedRecordLabels) {
+        // Collect distinct names and table sizes
+        Map<String, Integer> nameIds = new HashMap<>();
+        List<byte[]> encodedNames = new ArrayList<>();
+        long nameByteCount = 0;
+        long bandCount = 0;
+        long festivalCount = 0;
+        for(RecordLabel recordLabel : sortedRecordLabels) {
+            nameByteCount += addName(recordLabel.getName(), nameIds, encodedNames);
+            for(Band band : getBands(recordLabel).values()) {
+                nameByteCount += addName(band.getName(), nameIds, encodedNames);
+                bandCount++;
+                for(String festivalName : getFestivals(band).keySet()) {
+                    nameByteCount += addName(festivalName, nameIds, encodedNames);
+                    festivalCount++;
+                }
+            }
+        }
+
+        // Name blob, offset table and hash table of the name dictionary
+        int nameCount = encodedNames.size();
+        ByteBuffer nameBytes = ByteBuffer.allocateDirect(Math.toIntExact(nameByteCount));
+        IntBuffer nameOffsets = allocateInts(nameCount + 1L);
+        IntBuffer nameHashTable = allocateInts(getHashTableCapacity(nameCount));
+        int nameHashMask = nameHashTable.capacity() - 1;
+        for(int nameId = 0; nameId < nameCount; nameId++) {
+            byte[] encodedName = encodedNames.get(nameId);
+            nameOffsets.put(nameId, nameBytes.position());
+            nameBytes.put(encodedName);
+            int slot = mix(hashCode(encodedName)) & nameHashMask;
+            while(nameHashTable.get(slot) != 0) {
+                slot = (slot + 1) & nameHashMask;
+            }
+            nameHashTable.put(slot, nameId + 1);
+        }
+        nameOffsets.put(nameCount, nameBytes.position());
+
+        // Record label, band and festival tables
+        IntBuffer recordLabels = allocateInts((long) RECORD_LABEL_INTS * sortedRecordLabels.size());
+        IntBuffer recordLabelIndexByNameId = allocateInts(nameCount);
+        IntBuffer bands = allocateInts(BAND_INTS * bandCount);
+        IntBuffer festivals = allocateInts(festivalCount);
+        for(int nameId = 0; nameId < nameCount; nameId++) {
+            recordLabelIndexByNameId.put(nameId, -1);
+        }
+        int bandIndex = 0;
+        int festivalIndex = 0;
+        for(int recordLabelIndex = 0; recordLabelIndex < sortedRecordLabels.size(); recordLabelIndex++) {
+            RecordLabel recordLabel = sortedRecordLabels.get(recordLabelIndex);
+            int recordLabelNameId = nameIds.get(recordLabel.getName());
+            Map<String, Band> recordLabelBands = getBands(recordLabel);
+            putRow(recordLabels, RECORD_LABEL_INTS, recordLabelIndex, recordLabelNameId, bandIndex, recordLabelBands.size());
+            recordLabelIndexByNameId.put(recordLabelNameId, recordLabelIndex);
+            for(Band band : recordLabelBands.values()) {
+                Map<String, Festival> bandFestivals = getFestivals(band);
+                putRow(bands, BAND_INTS, bandIndex++, nameIds.get(band.getName()), festivalIndex, bandFestivals.size());
+                for(String festivalName : bandFestivals.keySet()) {
+                    festivals.put(festivalIndex++, nameIds.get(festivalName));
+                }
+            }
+        }
+
+        return new OffHeapFestivalSnapshot(nameBytes, nameOffsets, nameHashTable, nameCount,
+                recordLabels, recordLabelIndexByNameId, bands, festivals, sortedRecordLabels.size());
+    }
+
+    /**
+     * Record labels in the order given to {@link #build(List)}.
+     * @return Unmodifiable list of flyweight {@link RecordLabel}s
+     */
+    public List<RecordLabel> getRecordLabels() {
+        return new RecordLabelList();
+    }
+
+    /**
+     * Record labels by name, iterated in the order given to {@link #build(List)}.
+     * @return Unmodifiable map of flyweight {@link RecordLabel}s
+     */
+    public Map<String, RecordLabel> asMap() {
+        return new OffHeapNameMap<>(this, recordLabels, RECORD_LABEL_INTS, 0, recordLabelCount,
+                recordLabelIndexByNameId, recordLabelIndex -> new OffHeapRecordLabel(this, recordLabelIndex));
+    }
+
+    /**
+     * Number of distinct names stored.
+     * @return
+     */
+    public int getNameCount() {
+        return nameCount;
+    }
+
+    /**
+     * Bytes allocated outside of the heap for names and tables.
+     * @return
+     */
+    public long getOffHeapBytes() {
+        return offHeapBytes;
+    }
+
+    String getRecordLabelName(int recordLabelIndex) {
+        return getName(recordLabels.get(recordLabelIndex * RECORD_LABEL_INTS + NAME_ID));
+    }
+
+    Map<String, Band> getBands(int recordLabelIndex) {
+        int row = recordLabelIndex * RECORD_LABEL_INTS;
+        return new OffHeapNameMap<>(this, bands, BAND_INTS, recordLabels.get(row + FIRST_CHILD), recordLabels.get(row + CHILD_COUNT),
+                null, bandIndex -> new OffHeapBand(this, bandIndex));
+    }
+
+    String getBandName(int bandIndex) {
+        return getName(bands.get(bandIndex * BAND_INTS + NAME_ID));
+    }
+
+    Map<String, Festival> getFestivals(int bandIndex) {
+        int row = bandIndex * BAND_INTS;
+        return new OffHeapNameMap<>(this, festivals, 1, bands.get(row + FIRST_CHILD), bands.get(row + CHILD_COUNT),
+                null, festivalIndex -> new OffHeapFestival(this, festivalIndex));
+    }
+
+    String getFestivalName(int festivalIndex) {
+        return getName(festivals.get(festivalIndex));
+    }
+
+    /**
+     * Decodes the name with the given id. Every call allocates a new string, flyweights keep the names they decoded.
+     * @param nameId
+     * @return
+     */
+    String getName(int nameId) {
+        int offset = nameOffsets.get(nameId);
+        byte[] encodedName = new byte[nameOffsets.get(nameId + 1) - offset];
+
+        // Bulk copy on a duplicate, so that concurrent reads do not share a position
+        ByteBuffer nameBuffer = nameBytes.duplicate();
+        nameBuffer.position(offset);
+        nameBuffer.get(encodedName);
+        return new String(encodedName, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Looks a name up in the name dictionary without decoding stored names.
+     * @param name
+     * @return name id, -1 if the name is not stored
+     */
+    int findNameId(String name) {
+        byte[] encodedName = name.getBytes(StandardCharsets.UTF_8);
+        int slot = mix(hashCode(encodedName)) & nameHashMask;
+        int entry;
+        while((entry = nameHashTable.get(slot)) != 0) {
+            if(nameEquals(entry - 1, encodedName)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & nameHashMask;
+        }
+        return -1;
+    }
+
+    private boolean nameEquals(int nameId, byte[] encodedName) {
+        int offset = nameOffsets.get(nameId);
+        if(nameOffsets.get(nameId + 1) - offset != encodedName.length) {
+            return false;
+        }
+        for(int i = 0; i < encodedName.length; i++) {
+            if(nameBytes.get(offset + i) != encodedName[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int addName(String name, Map<String, Integer> nameIds, List<byte[]> encodedNames) {
+        if(nameIds.containsKey(name)) {
+            return 0;
+        }
+        byte[] encodedName = name.getBytes(StandardCharsets.UTF_8);
+        nameIds.put(name, encodedNames.size());
+        encodedNames.add(encodedName);
+        return encodedName.length;
+    }
+
+    private static Map<String, Band> getBands(RecordLabel recordLabel) {
+        return recordLabel.getBands() == null ? Collections.emptyMap() : recordLabel.getBands();
+    }
+
+    private static Map<String, Festival> getFestivals(Band band) {
+        return band.getFestivals() == null ? Collections.emptyMap() : band.getFestivals();
+    }
+
+    private static void putRow(IntBuffer table, int rowInts, int rowIndex, int nameId, int firstChild, int childCount) {
+        int row = rowIndex * rowInts;
+        table.put(row + NAME_ID, nameId);
+        table.put(row + FIRST_CHILD, firstChild);
+        table.put(row + CHILD_COUNT, childCount);
+    }
+
+    private static IntBuffer allocateInts(long count) {
+        return ByteBuffer.allocateDirect(Math.toIntExact(4 * count)).order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    /**
+     * Power of two with at most half of the slots in use.
+     */
+    private static int getHashTableCapacity(int entries) {
+        return Integer.highestOneBit(Math.max(1, entries) * 2 - 1) << 1;
+    }
+
+    private static int hashCode(byte[] encodedName) {
+        return Arrays.hashCode(encodedName);
+    }
+
+    /**
+     * Murmur3 finalizer to spread hash codes over the hash table.
+     */
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    /**
+     * List view creating a record label flyweight on every access.
+     */
+    private class RecordLabelList extends AbstractList<RecordLabel> implements RandomAccess {
+
+        @Override
+        public RecordLabel get(int index) {
+            if(index < 0 || index >= recordLabelCount) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + recordLabelCount);
+            }
+            return new OffHeapRecordLabel(OffHeapFestivalSnapshot.this, index);
+        }
+
+        @Override
+        public int size() {
+            return recordLabelCount;
+        }
+    }
+}
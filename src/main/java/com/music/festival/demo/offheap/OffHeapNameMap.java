@@ -0,0 +1,110 @@
+package com.music.festival.demo.offheap;
+
+import java.nio.IntBuffer;
+import java.util.*;
+import java.util.function.IntFunction;
+
+/**
+ * Unmodifiable map view over a range of rows of an off-heap table, keyed by the name of every row.
+ * Iterates in table order, values are flyweights created on access.
+ * @param <V> flyweight type
+ */
+class OffHeapNameMap<V> extends AbstractMap<String, V> {
+
+    private final OffHeapFestivalSnapshot snapshot;
+    private final IntBuffer table;
+    private final int rowInts;
+    private final int firstRow;
+    private final int rowCount;
+
+    /**
+     * Row by name id for the whole table, null to scan the range instead
+     */
+    private final IntBuffer rowByNameId;
+    private final IntFunction<V> flyweightFactory;
+
+    OffHeapNameMap(OffHeapFestivalSnapshot snapshot, IntBuffer table, int rowInts, int firstRow, int rowCount,
+                   IntBuffer rowByNameId, IntFunction<V> flyweightFactory) {
+        this.snapshot = snapshot;
+        this.table = table;
+        this.rowInts = rowInts;
+        this.firstRow = firstRow;
+        this.rowCount = rowCount;
+        this.rowByNameId = rowByNameId;
+        this.flyweightFactory = flyweightFactory;
+    }
+
+    @Override
+    public int size() {
+        return rowCount;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return findRow(key) >= 0;
+    }
+
+    @Override
+    public V get(Object key) {
+        int row = findRow(key);
+        return row < 0 ? null : flyweightFactory.apply(row);
+    }
+
+    @Override
+    public Set<Entry<String, V>> entrySet() {
+        return new AbstractSet<Entry<String, V>>() {
+            @Override
+            public Iterator<Entry<String, V>> iterator() {
+                return new Iterator<Entry<String, V>>() {
+                    private int row = firstRow;
+
+                    @Override
+                    public boolean hasNext() {
+                        return row < firstRow + rowCount;
+                    }
+
+                    @Override
+                    public Entry<String, V> next() {
+                        if(!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        int currentRow = row++;
+                        return new SimpleImmutableEntry<>(snapshot.getName(getNameId(currentRow)), flyweightFactory.apply(currentRow));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return rowCount;
+            }
+        };
+    }
+
+    /**
+     * Finds the row of a name by its name id, so that stored names are never decoded for a lookup.
+     */
+    private int findRow(Object key) {
+        if(!(key instanceof String)) {
+            return -1;
+        }
+        int nameId = snapshot.findNameId((String) key);
+        if(nameId < 0) {
+            return -1;
+        }
+        if(rowByNameId != null) {
+            int row = rowByNameId.get(nameId);
+            return row >= firstRow && row < firstRow + rowCount ? row : -1;
+        }
+        for(int row = firstRow; row < firstRow + rowCount; row++) {
+            if(getNameId(row) == nameId) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    private int getNameId(int row) {
+        return table.get(row * rowInts);
+    }
+}
@@ -0,0 +1,49 @@
+package com.music.festival.demo.offheap;
+
+import com.music.festival.demo.model.Band;
+import com.music.festival.demo.model.RecordLabel;
+
+import java.util.Map;
+
+/**
+ * Flyweight record label reading its name and bands from an {@link OffHeapFestivalSnapshot}.
+ */
+final class OffHeapRecordLabel extends RecordLabel {
+
+    private final OffHeapFestivalSnapshot snapshot;
+    private final int recordLabelIndex;
+
+    /**
+     * Name decoded on first access
+     */
+    private String decodedName;
+
+    OffHeapRecordLabel(OffHeapFestivalSnapshot snapshot, int recordLabelIndex) {
+        super("");
+        this.snapshot = snapshot;
+        this.recordLabelIndex = recordLabelIndex;
+    }
+
+    @Override
+    public String getName() {
+        if(decodedName == null) {
+            decodedName = snapshot.getRecordLabelName(recordLabelIndex);
+        }
+        return decodedName;
+    }
+
+    @Override
+    public Map<String, Band> getBands() {
+        return snapshot.getBands(recordLabelIndex);
+    }
+
+    @Override
+    public void setName(String name) {
+        throw new UnsupportedOperationException("Off-heap festival data is read only.");
+    }
+
+    @Override
+    public void setBands(Map<String, Band> bands) {
+        throw new UnsupportedOperationException("Off-heap festival data is read only.");
+    }
+}
@@ -0,0 +1,10 @@
+package com.music.festival.demo.pipeline;
+
+/**
+ * Thrown to a pipeline stage when another stage has failed.
+ */
+class PipelineAbortedException extends RuntimeException {
+    PipelineAbortedException(Throwable cause) {
+        super("Pipeline aborted. Cause: " + cause.getMessage(), cause);
+    }
+}
@@ -0,0 +1,103 @@
+package com.music.festival.demo.pipeline;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded queue between two pipeline stages, with a single producer and a single consumer.
+ * A full queue blocks the producer, so a slow stage slows down the stages feeding it instead of buffering without limit.
+ * Either side can abort the queue, after which both sides get a {@link PipelineAbortedException}.
+ */
+class PipelineQueue<T> {
+
+    private static final Object END_OF_STREAM = new Object();
+    private static final long ABORT_CHECK_INTERVAL_MILLIS = 100;
+
+    private final BlockingQueue<Object> queue;
+    private volatile Throwable failure;
+    private volatile int maxDepth;
+
+    PipelineQueue(int capacity) {
+        queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Adds an item, waiting for room in the queue.
+     * @param item
+     * @param producerMetrics receives the time spent waiting
+     */
+    void put(T item, StageMetrics producerMetrics) {
+        long start = System.nanoTime();
+        offer(item);
+        producerMetrics.blocked(System.nanoTime() - start);
+
+        int depth = queue.size();
+        if(depth > maxDepth) {
+            maxDepth = depth;
+        }
+    }
+
+    /**
+     * Signals the consumer that no more items follow.
+     */
+    void close() {
+        offer(END_OF_STREAM);
+    }
+
+    /**
+     * Takes the next item, waiting for one to arrive.
+     * @param consumerMetrics receives the time spent waiting
+     * @return the next item, null once the producer has closed the queue
+     */
+    @SuppressWarnings("unchecked")
+    T take(StageMetrics consumerMetrics) {
+        long start = System.nanoTime();
+        try {
+            Object item;
+            while((item = queue.poll(ABORT_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                checkNotAborted();
+            }
+            checkNotAborted();
+            return item == END_OF_STREAM ? null : (T) item;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PipelineAbortedException(e);
+        } finally {
+            consumerMetrics.blocked(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Aborts the queue, waking up both sides.
+     * @param cause failure of the stage that aborts
+     */
+    void abort(Throwable cause) {
+        if(failure == null) {
+            failure = cause;
+        }
+        queue.clear();
+    }
+
+    int getMaxDepth() {
+        return maxDepth;
+    }
+
+    private void offer(Object item) {
+        try {
+            checkNotAborted();
+            while(!queue.offer(item, ABORT_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkNotAborted();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PipelineAbortedException(e);
+        }
+    }
+
+    private void checkNotAborted() {
+        if(failure != null) {
+            throw new PipelineAbortedException(failure);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.music.festival.demo.pipeline;
+
+import com.music.festival.demo.rest.client.MusicFestivalRESTApiClient;
+import com.music.festival.demo.rest.client.exception.ResponseParsingException;
+import com.music.festival.demo.rest.client.model.Festival;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs the refresh as concurrent stages connected by bounded queues.
+ * Fetching response bytes, parsing festivals and restructuring overlap, as do rendering and writing lines.
+ * Restructured data is sorted, so rendering can only start once restructuring has seen every festival.
+ * The last stage of each half runs on the calling thread, the others on threads of this executor.
+ * Metrics of the stages of the latest run are kept for inspection.
+ */
+@Component
+public class PipelinedRefreshExecutor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PipelinedRefreshExecutor.class);
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    @Autowired
+    private MusicFestivalRESTApiClient apiClient;
+
+    /**
+     * System property refresh.pipeline.chunkQueueCapacity is set to 16 by default.
+     * Response bytes are queued in chunks of 64 KB.
+     */
+    @Value("${refresh.pipeline.chunkQueueCapacity:16}")
+    private int chunkQueueCapacity = 16;
+
+    /**
+     * System property refresh.pipeline.recordQueueCapacity is set to 1024 by default.
+     */
+    @Value("${refresh.pipeline.recordQueueCapacity:1024}")
+    private int recordQueueCapacity = 1024;
+
+    private final ExecutorService stageExecutor = Executors.newCachedThreadPool(new StageThreadFactory());
+
+    private volatile List<StageMetrics> lastFetchAndRestructureMetrics = Collections.emptyList();
+    private volatile List<StageMetrics> lastRenderAndWriteMetrics = Collections.emptyList();
+
+    /**
+     * Fetches and parses festivals on separate threads, handing every festival to the restructure stage
+     * on the calling thread as soon as it is parsed.
+     * @param restructureStage receives festivals in response order
+     * @throws ResponseParsingException when the response cannot be parsed
+     */
+    public void fetchAndRestructure(Consumer<Festival> restructureStage) throws ResponseParsingException {
+        StageMetrics fetchMetrics = new StageMetrics("fetch");
+        StageMetrics parseMetrics = new StageMetrics("parse");
+        StageMetrics restructureMetrics = new StageMetrics("restructure");
+        PipelineQueue<byte[]> chunkQueue = new PipelineQueue<>(chunkQueueCapacity);
+        PipelineQueue<Festival> festivalQueue = new PipelineQueue<>(recordQueueCapacity);
+        List<PipelineQueue<?>> queues = Arrays.asList(chunkQueue, festivalQueue);
+        lastFetchAndRestructureMetrics = Collections.unmodifiableList(Arrays.asList(fetchMetrics, parseMetrics, restructureMetrics));
+
+        AtomicReference<InputStream> fetchedResponse = new AtomicReference<>();
+        Future<?> fetchStage = submitStage(fetchMetrics, queues, () -> {
+            try (InputStream responseStream = apiClient.getFestivalsStream()) {
+                fetchedResponse.set(responseStream);
+                byte[] buffer = new byte[CHUNK_SIZE];
+                int length;
+                while((length = responseStream.read(buffer)) != -1) {
+                    if(length > 0) {
+                        chunkQueue.put(Arrays.copyOf(buffer, length), fetchMetrics);
+                        fetchMetrics.itemProcessed(length);
+                    }
+                }
+            }
+            chunkQueue.close();
+        });
+
+        Future<?> parseStage = submitStage(parseMetrics, queues, () -> {
+            QueueInputStream chunkStream = new QueueInputStream(chunkQueue, parseMetrics);
+            apiClient.parseFestivals(chunkStream, festival -> {
+                festivalQueue.put(festival, parseMetrics);
+                parseMetrics.itemProcessed(0);
+            });
+            festivalQueue.close();
+
+            // The parser stops at the end of the top-level array, the fetch stage still reads to the end of the response
+            chunkStream.drain();
+        });
+
+        restructureMetrics.start();
+        try {
+            Festival festival;
+            while((festival = festivalQueue.take(restructureMetrics)) != null) {
+                restructureStage.accept(festival);
+                restructureMetrics.itemProcessed(0);
+            }
+            awaitStage(fetchStage);
+            awaitStage(parseStage);
+
+            // Journaled only now that it parsed
+            apiClient.commitResponse(fetchedResponse.get());
+        } catch (PipelineAbortedException e) {
+            throw toResponseParsingException(e.getCause());
+        } catch (RuntimeException e) {
+            queues.forEach(queue -> queue.abort(e));
+            throw e;
+        } finally {
+            restructureMetrics.end();
+            parseMetrics.setInputQueueMaxDepth(chunkQueue.getMaxDepth());
+            restructureMetrics.setInputQueueMaxDepth(festivalQueue.getMaxDepth());
+            logMetrics(lastFetchAndRestructureMetrics);
+        }
+    }
+
+    /**
+     * Renders items to lines on a separate thread while the calling thread writes them to the output file.
+     * @param items items in output order
+     * @param renderStage renders the lines of an item
+     * @param outputFile
+     * @throws IOException when the output file cannot be written
+     */
+    public <T> void renderAndWrite(List<T> items, Function<T, List<String>> renderStage, Path outputFile) throws IOException {
+        StageMetrics renderMetrics = new StageMetrics("render");
+        StageMetrics writeMetrics = new StageMetrics("write");
+        PipelineQueue<List<String>> linesQueue = new PipelineQueue<>(recordQueueCapacity);
+        List<PipelineQueue<?>> queues = Collections.singletonList(linesQueue);
+        lastRenderAndWriteMetrics = Collections.unmodifiableList(Arrays.asList(renderMetrics, writeMetrics));
+
+        Future<?> renderStageFuture = submitStage(renderMetrics, queues, () -> {
+            for(T item : items) {
+                linesQueue.put(renderStage.apply(item), renderMetrics);
+                renderMetrics.itemProcessed(0);
+            }
+            linesQueue.close();
+        });
+
+        writeMetrics.start();
+        try (BufferedWriter writer = Files.newBufferedWriter(outputFile)) {
+            List<String> lines;
+            while((lines = linesQueue.take(writeMetrics)) != null) {
+                for(String line : lines) {
+                    writer.write(line);
+                    writer.newLine();
+                    writeMetrics.itemProcessed(line.length() + 1);
+                }
+            }
+            awaitStage(renderStageFuture);
+        } catch (PipelineAbortedException e) {
+            throw toIOException(e.getCause());
+        } catch (IOException | RuntimeException e) {
+            queues.forEach(queue -> queue.abort(e));
+            throw e;
+        } finally {
+            writeMetrics.end();
+            writeMetrics.setInputQueueMaxDepth(linesQueue.getMaxDepth());
+            logMetrics(lastRenderAndWriteMetrics);
+        }
+    }
+
+    /**
+     * Metrics of the fetch, parse and restructure stages of the latest run.
+     * @return
+     */
+    public List<StageMetrics> getLastFetchAndRestructureMetrics() {
+        return lastFetchAndRestructureMetrics;
+    }
+
+    /**
+     * Metrics of the render and write stages of the latest run.
+     * @return
+     */
+    public List<StageMetrics> getLastRenderAndWriteMetrics() {
+        return lastRenderAndWriteMetrics;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stageExecutor.shutdownNow();
+    }
+
+    /**
+     * Runs a stage on a thread of this executor. A failing stage aborts all queues, so that the other stages stop too.
+     */
+    private Future<?> submitStage(StageMetrics metrics, List<PipelineQueue<?>> queues, Stage stage) {
+        return stageExecutor.submit(() -> {
+            metrics.start();
+            try {
+                stage.run();
+            } catch (PipelineAbortedException e) {
+                // Another stage failed and aborted the queues already
+            } catch (Exception e) {
+                queues.forEach(queue -> queue.abort(e));
+            } finally {
+                metrics.end();
+            }
+        });
+    }
+
+    private void awaitStage(Future<?> stage) {
+        try {
+            stage.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PipelineAbortedException(e);
+        } catch (ExecutionException e) {
+            throw new PipelineAbortedException(e.getCause());
+        }
+    }
+
+    private ResponseParsingException toResponseParsingException(Throwable cause) {
+        if(cause instanceof ResponseParsingException) {
+            return (ResponseParsingException) cause;
+        }
+        return new ResponseParsingException("Exception while fetching festivals. Cause: " + cause);
+    }
+
+    private IOException toIOException(Throwable cause) {
+        if(cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if(cause instanceof UncheckedIOException) {
+            return ((UncheckedIOException) cause).getCause();
+        }
+        return new IOException("Exception while rendering output. Cause: " + cause, cause);
+    }
+
+    private void logMetrics(List<StageMetrics> stageMetrics) {
+        if(LOGGER.isDebugEnabled()) {
+            stageMetrics.forEach(metrics -> LOGGER.debug("Pipeline stage {}", metrics));
+        }
+    }
+
+    /**
+     * Body of a stage run on a thread of this executor.
+     */
+    private interface Stage {
+        void run() throws Exception;
+    }
+
+    /**
+     * Daemon threads named after the executor, so that stage threads never keep the application alive.
+     */
+    private static class StageThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "refresh-pipeline-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
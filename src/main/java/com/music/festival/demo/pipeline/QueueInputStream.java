@@ -0,0 +1,90 @@
+package com.music.festival.demo.pipeline;
+
+import java.io.InputStream;
+
+/**
+ * Input stream reading the byte chunks of a {@link PipelineQueue}, so that a parser can consume bytes as they are fetched.
+ */
+class QueueInputStream extends InputStream {
+
+    private final PipelineQueue<byte[]> chunkQueue;
+    private final StageMetrics consumerMetrics;
+    private byte[] chunk = new byte[0];
+    private int position;
+    private boolean endOfStream;
+
+    QueueInputStream(PipelineQueue<byte[]> chunkQueue, StageMetrics consumerMetrics) {
+        this.chunkQueue = chunkQueue;
+        this.consumerMetrics = consumerMetrics;
+    }
+
+    @Override
+    public int read() {
+        if(!ensureAvailable()) {
+            return -1;
+        }
+        return chunk[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        if(length == 0) {
+            return 0;
+        }
+        if(!ensureAvailable()) {
+            return -1;
+        }
+        int count = Math.min(length, chunk.length - position);
+        System.arraycopy(chunk, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return chunk.length - position;
+    }
+
+    /**
+     * Releases the current chunk. Chunks left in the queue are taken by {@link #drain()} once the consumer has succeeded,
+     * a failing consumer aborts the queue instead.
+     */
+    @Override
+    public void close() {
+        chunk = new byte[0];
+        position = 0;
+    }
+
+    /**
+     * Takes the chunks left once the consumer is done, e.g. whitespace after the end of the top-level array,
+     * so that the producer reaches the end of the stream instead of blocking on the full queue.
+     */
+    void drain() {
+        while(!endOfStream) {
+            if(chunkQueue.take(consumerMetrics) == null) {
+                endOfStream = true;
+            }
+        }
+        close();
+    }
+
+    /**
+     * Takes the next chunk once the current one is used up.
+     * @return false at the end of the stream
+     */
+    private boolean ensureAvailable() {
+        while(position == chunk.length) {
+            if(endOfStream) {
+                return false;
+            }
+            byte[] nextChunk = chunkQueue.take(consumerMetrics);
+            if(nextChunk == null) {
+                endOfStream = true;
+                return false;
+            }
+            chunk = nextChunk;
+            position = 0;
+        }
+        return true;
+    }
+}
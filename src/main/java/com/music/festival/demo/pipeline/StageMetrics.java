@@ -0,0 +1,109 @@
+package com.music.festival.demo.pipeline;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and queue metrics of a single pipeline stage.
+ * Counters are written by the thread running the stage and may be read from any thread.
+ */
+public class StageMetrics {
+
+    private final String stageName;
+    private volatile long itemCount;
+    private volatile long byteCount;
+    private volatile long blockedNanos;
+    private volatile long startNanos;
+    private volatile long endNanos;
+    private volatile int inputQueueMaxDepth;
+
+    StageMetrics(String stageName) {
+        this.stageName = stageName;
+    }
+
+    void start() {
+        startNanos = System.nanoTime();
+    }
+
+    void end() {
+        endNanos = System.nanoTime();
+    }
+
+    void itemProcessed(long bytes) {
+        itemCount++;
+        byteCount += bytes;
+    }
+
+    void blocked(long nanos) {
+        blockedNanos += nanos;
+    }
+
+    void setInputQueueMaxDepth(int inputQueueMaxDepth) {
+        this.inputQueueMaxDepth = inputQueueMaxDepth;
+    }
+
+    public String getStageName() {
+        return stageName;
+    }
+
+    /**
+     * Items produced by the stage, i.e. byte chunks, festivals, record labels or lines.
+     * @return
+     */
+    public long getItemCount() {
+        return itemCount;
+    }
+
+    /**
+     * Bytes produced by the stage, 0 for stages that do not deal in bytes.
+     * @return
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * Time the stage spent waiting for its input queue or for room in its output queue.
+     * @return
+     */
+    public long getBlockedNanos() {
+        return blockedNanos;
+    }
+
+    public long getElapsedNanos() {
+        long end = endNanos == 0 ? System.nanoTime() : endNanos;
+        return startNanos == 0 ? 0 : end - startNanos;
+    }
+
+    /**
+     * Time the stage spent working, excluding time blocked on queues.
+     * @return
+     */
+    public long getBusyNanos() {
+        return Math.max(0, getElapsedNanos() - blockedNanos);
+    }
+
+    /**
+     * Highest number of items waiting in the queue feeding this stage, 0 for the first stage.
+     * @return
+     */
+    public int getInputQueueMaxDepth() {
+        return inputQueueMaxDepth;
+    }
+
+    /**
+     * Items per second of busy time, the rate the stage could sustain if it never waited on a queue.
+     * @return
+     */
+    public double getItemsPerSecond() {
+        long busyNanos = getBusyNanos();
+        return busyNanos == 0 ? 0 : itemCount * (double) TimeUnit.SECONDS.toNanos(1) / busyNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d items, %d bytes, elapsed %d ms, busy %d ms, blocked %d ms, %.0f items/s, input queue max depth %d",
+                stageName, itemCount, byteCount, TimeUnit.NANOSECONDS.toMillis(getElapsedNanos()),
+                TimeUnit.NANOSECONDS.toMillis(getBusyNanos()), TimeUnit.NANOSECONDS.toMillis(blockedNanos),
+                getItemsPerSecond(), inputQueueMaxDepth);
+    }
+}
@@ -0,0 +1,162 @@
+package com.music.festival.demo.rest.client;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Locale;
+import java.util.function.LongConsumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decompresses gzip and deflate encoded responses while they are read, counting wire and decoded bytes.
+ */
+final class ContentDecoding {
+
+    static final String IDENTITY = "identity";
+    static final String GZIP = "gzip";
+    static final String DEFLATE = "deflate";
+
+    /**
+     * Value of the Accept-Encoding request header
+     */
+    static final String ACCEPT_ENCODING = GZIP + ", " + DEFLATE;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private ContentDecoding() {
+    }
+
+    /**
+     * Normalizes the Content-Encoding response header.
+     * @param contentEncoding header value, may be null
+     * @return lower case encoding, identity if the header is missing
+     */
+    static String getContentEncoding(String contentEncoding) {
+        if(contentEncoding == null || contentEncoding.trim().isEmpty()) {
+            return IDENTITY;
+        }
+        String encoding = contentEncoding.trim().toLowerCase(Locale.ROOT);
+        return "x-gzip".equals(encoding) ? GZIP : encoding;
+    }
+
+    /**
+     * Wraps the response stream, so that it yields the decoded body.
+     * Nothing is buffered beyond the decompression buffer, the body is inflated as the caller reads.
+     * @param wireStream response body as received
+     * @param metrics receives wire and decoded byte counts as the stream is read
+     * @return decoded stream, closing it closes the response stream. Empty if the body is empty, whatever the encoding.
+     * @throws IOException when the encoding is not supported or the gzip header is invalid
+     */
+    static InputStream decode(InputStream wireStream, TransferMetrics metrics) throws IOException {
+        String contentEncoding = metrics.getContentEncoding();
+        if(IDENTITY.equals(contentEncoding)) {
+            return new CountingInputStream(wireStream, bytes -> {
+                metrics.wireBytesRead(bytes);
+                metrics.decodedBytesRead(bytes);
+            });
+        }
+
+        if(!GZIP.equals(contentEncoding) && !DEFLATE.equals(contentEncoding)) {
+            wireStream.close();
+            throw new IOException("Unsupported content encoding " + contentEncoding);
+        }
+
+        // Decoders read their header as soon as they are created, an empty body has none
+        PushbackInputStream countedWireStream = new PushbackInputStream(new CountingInputStream(wireStream, metrics::wireBytesRead), 1);
+        int firstByte = countedWireStream.read();
+        if(firstByte < 0) {
+            return countedWireStream;
+        }
+        countedWireStream.unread(firstByte);
+
+        InputStream decodedStream = GZIP.equals(contentEncoding)
+                ? new GZIPInputStream(countedWireStream, BUFFER_SIZE)
+                : inflate(countedWireStream);
+        return new CountingInputStream(decodedStream, metrics::decodedBytesRead);
+    }
+
+    /**
+     * Inflates deflate encoded data. HTTP deflate is zlib wrapped, but some servers send raw deflate data,
+     * so the zlib header is checked first.
+     */
+    private static InputStream inflate(InputStream wireStream) throws IOException {
+        PushbackInputStream pushbackStream = new PushbackInputStream(wireStream, 2);
+        byte[] header = new byte[2];
+        int headerLength = 0;
+        while(headerLength < header.length) {
+            int read = pushbackStream.read(header, headerLength, header.length - headerLength);
+            if(read < 0) {
+                break;
+            }
+            headerLength += read;
+        }
+        pushbackStream.unread(header, 0, headerLength);
+
+        boolean zlibWrapped = headerLength == 2 && (header[0] & 0x0F) == 8
+                && (((header[0] & 0xFF) << 8) | (header[1] & 0xFF)) % 31 == 0;
+        Inflater inflater = new Inflater(!zlibWrapped);
+        return new InflaterInputStream(pushbackStream, inflater, BUFFER_SIZE) {
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if(closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    super.close();
+                } finally {
+                    // Inflaters passed in are not released by InflaterInputStream
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * Reports the number of bytes read through it.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private final LongConsumer bytesRead;
+
+        CountingInputStream(InputStream inputStream, LongConsumer bytesRead) {
+            super(inputStream);
+            this.bytesRead = bytesRead;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if(value >= 0) {
+                bytesRead.accept(1);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if(read > 0) {
+                bytesRead.accept(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long length) throws IOException {
+            long skipped = super.skip(length);
+            bytesRead.accept(skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
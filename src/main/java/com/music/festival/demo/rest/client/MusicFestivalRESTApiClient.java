@@ -1,30 +1,46 @@
 package com.music.festival.demo.rest.client;
 
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.music.festival.demo.jfr.ResponseParseEvent;
+import com.music.festival.demo.journal.ResponseJournal;
+import com.music.festival.demo.jfr.UpstreamRequestEvent;
 import com.music.festival.demo.rest.client.exception.ResponseParsingException;
 import com.music.festival.demo.rest.client.model.Festival;
 import org.glassfish.jersey.client.ClientConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import org.springframework.util.StringUtils;
 import org.springframework.util.backoff.BackOffExecution;
 import org.springframework.util.backoff.ExponentialBackOff;
 
+import javax.ws.rs.ProcessingException;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Invocation;
 import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * API Client for festivals API.
+ * Successful responses are journaled when the response journal is enabled.
+ * The journaled response is served instead of calling the API in replay mode, and as fallback when the API fails.
+ * Responses are requested gzip or deflate encoded and decompressed while they are read.
  */
 @Component
 public class MusicFestivalRESTApiClient {
@@ -38,32 +54,270 @@ public class MusicFestivalRESTApiClient {
     @Value("${rest.uri:http://eacodingtest.digital.energyaustralia.com.au/api/v1/}")
     private String REST_URI;
 
+    /**
+     * System property log.payload.maxCharacters is set to 1024 by default.
+     * Responses logged at DEBUG level are cut to this many characters.
+     */
+    @Value("${log.payload.maxCharacters:1024}")
+    private int payloadLogMaxCharacters = 1024;
+
+    /**
+     * System property log.payload.sampleRate is set to 10 by default.
+     * Only the first and then every n-th response is logged at DEBUG level.
+     */
+    @Value("${log.payload.sampleRate:10}")
+    private int payloadLogSampleRate = 10;
+
+    private final AtomicLong loggableResponseCount = new AtomicLong();
+
+    /**
+     * System property rest.compression is set to TRUE by default.
+     * TRUE asks the API for a gzip or deflate encoded response, which is decompressed while it is parsed.
+     */
+    @Value("${rest.compression:true}")
+    private boolean compressionEnabled = true;
+
+    /**
+     * Transfer metrics of the most recent festivals response
+     */
+    private volatile TransferMetrics lastTransferMetrics;
+
+    @Autowired
+    private ResponseJournal responseJournal;
+
     /**
      * Get a list of {@link Festival}s by calling the REST API
+     * The response is parsed while it is read, only the list of festivals is held in memory.
      * @return List of {@link Festival}s
-     * @throws ResponseParsingException thrown if the response from remote API is invalid.
+     * @throws ResponseParsingException thrown if the response from remote API is invalid or empty.
      */
     public List<Festival> getFestivals() throws ResponseParsingException {
+        List<Festival> festivalList = new ArrayList<>();
+        getFestivals(festivalList::add);
+        return festivalList;
+    }
+
+    /**
+     * Get {@link Festival}s by calling the REST API, handing every festival to the consumer as soon as it is parsed.
+     * The response is parsed from the stream, so neither the response string nor the list of festivals is held in memory.
+     * @param festivalConsumer receives festivals in response order
+     * @throws ResponseParsingException thrown if the response from remote API is invalid or empty.
+     */
+    public void getFestivals(Consumer<Festival> festivalConsumer) throws ResponseParsingException {
+        InputStream responseStream = getFestivalsStream();
+        parseFestivals(responseStream, festivalConsumer);
+        commitResponse(responseStream);
+    }
+
+    /**
+     * Calls the REST API and returns the unparsed response body, to be read while it arrives.
+     * The body is journaled once read to the end and passed to {@link #commitResponse(InputStream)},
+     * if the response journal is enabled.
+     * An empty body is replaced by the journaled response, as a failed call is.
+     * @return response stream, to be closed by the caller
+     * @throws ResponseParsingException thrown if replay is enabled and no response is journaled.
+     */
+    public InputStream getFestivalsStream() throws ResponseParsingException {
+        if(isReplayEnabled()) {
+            return openJournaledResponse();
+        }
+
         // Invoke REST API with exponential backoff to handle throttling error
-        Response response = invokeRemoteGetWithExponentialBackoff("festivals");
-        String responseString = response.readEntity(String.class);
+        Response response;
+        try {
+            response = invokeRemoteGetWithExponentialBackoff("festivals");
+        } catch (ProcessingException e) {
+            return openFallbackResponse(e.getMessage()).orElseThrow(() -> e);
+        }
 
-        if(StringUtils.isEmpty(responseString)) {
-            LOGGER.info("Empty response string received from the API.");
-        } else {
-            LOGGER.debug("Response from the API : " + responseString);
+        int status = response.getStatus();
+        if(status != Response.Status.OK.getStatusCode()) {
+            Optional<InputStream> fallbackResponse = openFallbackResponse("status " + status);
+            if(fallbackResponse.isPresent()) {
+                response.close();
+                return fallbackResponse.get();
+            }
+            return decodeResponse(response);
         }
 
-        // Deserialize response, prepare list of Festivals.
-        ObjectMapper objectMapper = new ObjectMapper();
-        List<Festival> festivalList = new ArrayList<>();
+        // Look at the first byte, so that an empty body can fall back before anything is parsed
+        PushbackInputStream responseStream = new PushbackInputStream(decodeResponse(response), 1);
         try {
-            festivalList = objectMapper.readValue(responseString, new TypeReference<List<Festival>>(){});
+            int firstByte = responseStream.read();
+            if(firstByte >= 0) {
+                responseStream.unread(firstByte);
+            } else {
+                Optional<InputStream> fallbackResponse = openFallbackResponse("empty response");
+                if(fallbackResponse.isPresent()) {
+                    responseStream.close();
+                    return fallbackResponse.get();
+                }
+            }
+        } catch (IOException e) {
+            closeQuietly(responseStream);
+            throw new ResponseParsingException("Exception while decoding " + lastTransferMetrics.getContentEncoding() + " response. Cause: " + e.getMessage());
+        }
+
+        InputStream loggedStream = LOGGER.isDebugEnabled() && isPayloadLogSampled() ? new PayloadLoggingInputStream(responseStream) : responseStream;
+        return isJournalEnabled() ? responseJournal.recording(loggedStream) : loggedStream;
+    }
+
+    /**
+     * Journals a response of {@link #getFestivalsStream()} once it has been parsed without errors.
+     * Responses that fail to parse are not journaled, so that they cannot replace the last valid response.
+     * @param responseStream stream returned by {@link #getFestivalsStream()}, journaled responses and fallbacks are ignored
+     */
+    public void commitResponse(InputStream responseStream) {
+        if(responseStream instanceof ResponseJournal.RecordingInputStream) {
+            ((ResponseJournal.RecordingInputStream) responseStream).commit();
+        }
+    }
+
+    /**
+     * Wire and decoded bytes of the most recent festivals response received from the API.
+     * Counts grow while a streamed response is being read.
+     * @return {@link TransferMetrics}, null if no response has been received
+     */
+    public TransferMetrics getLastTransferMetrics() {
+        return lastTransferMetrics;
+    }
+
+    /**
+     * Parses a festivals response stream, handing every festival to the consumer as soon as it is parsed.
+     * @param responseStream closed once parsed
+     * @param festivalConsumer receives festivals in response order
+     * @throws ResponseParsingException thrown if the response from remote API is invalid or empty.
+     */
+    public void parseFestivals(InputStream responseStream, Consumer<Festival> festivalConsumer) throws ResponseParsingException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        ResponseParseEvent parseEvent = new ResponseParseEvent();
+        parseEvent.begin();
+        int festivalCount = 0;
+        try (InputStream stream = responseStream;
+             JsonParser parser = objectMapper.getFactory().createParser(stream)) {
+            // An empty list would replace the cached festivals, an empty body is no list
+            if(parser.nextToken() == null) {
+                LOGGER.info("Empty response string received from the API.");
+                throw new ResponseParsingException("Exception while parsing response string. Cause: empty response.");
+            }
+            if(parser.currentToken() != JsonToken.START_ARRAY) {
+                throw new ResponseParsingException("Exception while parsing response string. Cause: expected an array of festivals.");
+            }
+
+            // Deserialize one festival at a time
+            while(parser.nextToken() == JsonToken.START_OBJECT) {
+                festivalConsumer.accept(objectMapper.readValue(parser, Festival.class));
+                festivalCount++;
+            }
+            if(parser.currentToken() != JsonToken.END_ARRAY) {
+                throw new ResponseParsingException("Exception while parsing response string. Cause: unexpected token " + parser.currentToken());
+            }
+
+            // Time spent in the consumer is included, festivals are handed over while parsing
+            parseEvent.end();
+            if(parseEvent.shouldCommit()) {
+                parseEvent.streaming = true;
+                parseEvent.responseCharacters = -1;
+                parseEvent.responseBytes = parser.getCurrentLocation().getByteOffset();
+                parseEvent.festivalCount = festivalCount;
+                parseEvent.commit();
+            }
         } catch (IOException e) {
             throw new ResponseParsingException("Exception while parsing response string. Cause: " + e.getMessage());
         }
+    }
 
-        return festivalList;
+    /**
+     * True for the responses picked by the payload log sample rate.
+     * @return
+     */
+    private boolean isPayloadLogSampled() {
+        return loggableResponseCount.getAndIncrement() % Math.max(payloadLogSampleRate, 1) == 0;
+    }
+
+    /**
+     * Cuts a response down to the payload log length, without splitting a surrogate pair.
+     * @param responseString
+     * @return
+     */
+    private String truncatePayload(String responseString) {
+        if(responseString.length() <= payloadLogMaxCharacters) {
+            return responseString;
+        }
+        int end = Math.max(payloadLogMaxCharacters, 0);
+        if(end > 0 && Character.isHighSurrogate(responseString.charAt(end - 1))) {
+            end--;
+        }
+        return responseString.substring(0, end) + "...";
+    }
+
+    /**
+     * Opens the response body, decompressing it while it is read if it is gzip or deflate encoded.
+     * @param response
+     * @return decoded response stream
+     * @throws ResponseParsingException thrown if the content encoding is not supported or the compressed body is invalid.
+     */
+    private InputStream decodeResponse(Response response) throws ResponseParsingException {
+        TransferMetrics transferMetrics = new TransferMetrics(ContentDecoding.getContentEncoding(response.getHeaderString(HttpHeaders.CONTENT_ENCODING)));
+        lastTransferMetrics = transferMetrics;
+        try {
+            return ContentDecoding.decode(response.readEntity(InputStream.class), transferMetrics);
+        } catch (IOException e) {
+            response.close();
+            throw new ResponseParsingException("Exception while decoding " + transferMetrics.getContentEncoding() + " response. Cause: " + e.getMessage());
+        }
+    }
+
+    private boolean isJournalEnabled() {
+        return responseJournal != null && responseJournal.isEnabled();
+    }
+
+    private boolean isReplayEnabled() {
+        return responseJournal != null && responseJournal.isReplayEnabled();
+    }
+
+    /**
+     * Opens the newest journaled response for replay.
+     * @return response stream
+     * @throws ResponseParsingException thrown if no response is journaled.
+     */
+    private InputStream openJournaledResponse() throws ResponseParsingException {
+        try {
+            LOGGER.debug("Replaying journaled response.");
+            return responseJournal.openLatest()
+                    .orElseThrow(() -> new ResponseParsingException("No journaled response to replay."));
+        } catch (IOException e) {
+            throw new ResponseParsingException("Exception while reading journaled response. Cause: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Opens the newest journaled response in place of a failed API call, if fallback is enabled.
+     * @param failure description of the failure
+     * @return response stream, empty if fallback is disabled or no response is journaled
+     */
+    private Optional<InputStream> openFallbackResponse(String failure) {
+        if(responseJournal == null || !responseJournal.isFallbackEnabled()) {
+            return Optional.empty();
+        }
+        try {
+            Optional<InputStream> fallbackResponse = responseJournal.openLatest();
+            if(fallbackResponse.isPresent()) {
+                LOGGER.warn("Request for festivals failed ({}). Falling back to the journaled response.", failure);
+            }
+            return fallbackResponse;
+        } catch (IOException e) {
+            LOGGER.warn("Could not read journaled response. Cause: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private void closeQuietly(InputStream responseStream) {
+        try {
+            responseStream.close();
+        } catch (IOException e) {
+            LOGGER.debug("Could not close response stream. Cause: {}", e.getMessage());
+        }
     }
 
     /**
@@ -76,8 +330,11 @@ public class MusicFestivalRESTApiClient {
         Client client = ClientBuilder.newClient( new ClientConfig() );
         WebTarget webTarget = client.target(REST_URI).path(path);
         Invocation.Builder invocationBuilder =  webTarget.request(MediaType.APPLICATION_JSON);
+        if(compressionEnabled) {
+            invocationBuilder = invocationBuilder.header(HttpHeaders.ACCEPT_ENCODING, ContentDecoding.ACCEPT_ENCODING);
+        }
 
-        LOGGER.debug("Invoking API at URI : " + webTarget.getUri());
+        LOGGER.debug("Invoking API at URI : {}", webTarget.getUri());
 
         // Exponential backoff to handle throttling error.
         ExponentialBackOff backoff = new ExponentialBackOff();
@@ -85,22 +342,31 @@ public class MusicFestivalRESTApiClient {
 
         Response response = null;
         long waitTime = 0;
+        int attempt = 0;
 
         while(waitTime != backOffExecution.STOP) {
+            UpstreamRequestEvent requestEvent = new UpstreamRequestEvent();
+            requestEvent.begin();
             response = invocationBuilder.get();
+            requestEvent.end();
+            attempt++;
+            int status = response.getStatus();
 
             // Return successful response
-            if(response.getStatus() == Response.Status.OK.getStatusCode()) {
+            if(status == Response.Status.OK.getStatusCode()) {
                 LOGGER.debug("Got a successful response.");
+                commitUpstreamRequestEvent(requestEvent, webTarget, attempt, status, response, 0);
                 return response;
             }
 
             // Increase waitTime and try again
             try {
                 waitTime = backOffExecution.nextBackOff();
+                commitUpstreamRequestEvent(requestEvent, webTarget, attempt, status, response,
+                        waitTime == backOffExecution.STOP ? 0 : waitTime);
                 if(waitTime != backOffExecution.STOP) {
                     response.close();
-                    LOGGER.info("Request for " + webTarget.getUri() + " failed. Backing off for " + waitTime + "ms.");
+                    LOGGER.info("Request for {} failed. Backing off for {}ms.", webTarget.getUri(), waitTime);
                     Thread.sleep(waitTime);
                 }
             } catch (InterruptedException e) {
@@ -109,4 +375,79 @@ public class MusicFestivalRESTApiClient {
         }
         return response;
     }
+
+    /**
+     * Commits the flight recorder event for an attempt, if the event is enabled.
+     * Must be called before the response is closed.
+     */
+    private void commitUpstreamRequestEvent(UpstreamRequestEvent requestEvent, WebTarget webTarget, int attempt, int status,
+                                            Response response, long backoffWait) {
+        if(requestEvent.shouldCommit()) {
+            requestEvent.uri = String.valueOf(webTarget.getUri());
+            requestEvent.attempt = attempt;
+            requestEvent.status = status;
+            requestEvent.responseLength = response.getLength();
+            requestEvent.backoffWait = backoffWait;
+            requestEvent.commit();
+        }
+    }
+
+    /**
+     * Keeps the start of the body while it is read, and logs it at DEBUG level once the stream is closed.
+     * At most 4 bytes per logged character are kept, the body itself is not buffered.
+     */
+    private class PayloadLoggingInputStream extends FilterInputStream {
+        private final byte[] payloadStart;
+        private int payloadStartLength;
+        private long payloadLength;
+        private boolean closed;
+
+        PayloadLoggingInputStream(InputStream responseStream) {
+            super(responseStream);
+            payloadStart = new byte[(int) Math.min(Math.max(payloadLogMaxCharacters, 0) * 4L + 4, Integer.MAX_VALUE - 8)];
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if(value >= 0) {
+                if(payloadStartLength < payloadStart.length) {
+                    payloadStart[payloadStartLength++] = (byte) value;
+                }
+                payloadLength++;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if(read > 0) {
+                int kept = Math.min(read, payloadStart.length - payloadStartLength);
+                System.arraycopy(buffer, offset, payloadStart, payloadStartLength, kept);
+                payloadStartLength += kept;
+                payloadLength += read;
+            }
+            return read;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(closed) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                LOGGER.debug("Response from the API ({} bytes) : {}", payloadLength,
+                        truncatePayload(new String(payloadStart, 0, payloadStartLength, StandardCharsets.UTF_8)));
+            }
+        }
+    }
 }
@@ -0,0 +1,63 @@
+package com.music.festival.demo.rest.client;
+
+/**
+ * Bytes of a response as received over the wire and after decoding its content encoding.
+ * Counters are written by the thread reading the response and may be read from any thread.
+ */
+public class TransferMetrics {
+
+    private final String contentEncoding;
+    private volatile long wireBytes;
+    private volatile long decodedBytes;
+
+    TransferMetrics(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+
+    void wireBytesRead(long bytes) {
+        wireBytes += bytes;
+    }
+
+    void decodedBytesRead(long bytes) {
+        decodedBytes += bytes;
+    }
+
+    /**
+     * Content encoding of the response, identity if it was not compressed.
+     * @return
+     */
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    /**
+     * Bytes read from the connection so far.
+     * @return
+     */
+    public long getWireBytes() {
+        return wireBytes;
+    }
+
+    /**
+     * Bytes handed to the parser so far, after decompression.
+     * @return
+     */
+    public long getDecodedBytes() {
+        return decodedBytes;
+    }
+
+    /**
+     * Decoded bytes per wire byte, 1 for uncompressed responses.
+     * @return
+     */
+    public double getCompressionRatio() {
+        long wire = wireBytes;
+        return wire == 0 ? 1 : decodedBytes / (double) wire;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d wire bytes, %d decoded bytes, compression ratio %.1f",
+                contentEncoding, wireBytes, decodedBytes, getCompressionRatio());
+    }
+}
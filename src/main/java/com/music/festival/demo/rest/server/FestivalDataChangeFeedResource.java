@@ -0,0 +1,168 @@
+package com.music.festival.demo.rest.server;
+
+import com.music.festival.demo.feed.FestivalDataChangeFeed;
+import com.music.festival.demo.feed.FestivalDataChangeListener;
+import com.music.festival.demo.model.FestivalDataChangeEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.sse.OutboundSseEvent;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseEventSink;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server-sent events endpoint streaming festival data change events.
+ * Clients resume from a snapshot version with the 'sinceVersion' query parameter or the Last-Event-ID header.
+ * A 'resync-required' event is sent when the requested version is no longer in the feed history,
+ * clients should then reload the full festival data and continue with the following change events.
+ * A heartbeat comment is sent to every open stream periodically, so that closed clients are removed from the feed
+ * without waiting for the next change event. Clients that fall behind are disconnected and resume with Last-Event-ID.
+ */
+@Component
+@Path("festivals/changes")
+public class FestivalDataChangeFeedResource {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FestivalDataChangeFeedResource.class);
+
+    static final String CHANGE_EVENT_NAME = "festival-data-change";
+    static final String RESYNC_EVENT_NAME = "resync-required";
+
+    static final String HEARTBEAT_COMMENT = "heartbeat";
+
+    @Autowired
+    private FestivalDataChangeFeed changeFeed;
+
+    /**
+     * System property changeFeed.heartbeatIntervalSeconds is set to 15 by default.
+     */
+    @Value("${changeFeed.heartbeatIntervalSeconds:15}")
+    private long heartbeatIntervalSeconds = 15;
+
+    private final Map<SseEventSink, Subscription> subscriptions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "change-feed-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void startHeartbeat() {
+        heartbeatExecutor.scheduleWithFixedDelay(this::sendHeartbeats, heartbeatIntervalSeconds, heartbeatIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeatExecutor.shutdownNow();
+    }
+
+    /**
+     * Streams change events published after the given version, followed by live change events.
+     * @param sinceVersion last snapshot version seen by the client
+     * @param lastEventId last event id received by a reconnecting client, takes precedence over sinceVersion
+     * @param eventSink
+     * @param sse
+     */
+    @GET
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    public void streamChanges(@QueryParam("sinceVersion") Long sinceVersion,
+                              @HeaderParam(HttpHeaders.LAST_EVENT_ID_HEADER) Long lastEventId,
+                              @Context SseEventSink eventSink,
+                              @Context Sse sse) {
+        long lastSeenVersion = lastEventId != null ? lastEventId : (sinceVersion != null ? sinceVersion : 0L);
+
+        FestivalDataChangeListener listener = new FestivalDataChangeListener() {
+            @Override
+            public void onFestivalDataChanged(FestivalDataChangeEvent changeEvent) {
+                if(eventSink.isClosed()) {
+                    unsubscribe(eventSink);
+                    return;
+                }
+                send(eventSink, toOutboundEvent(sse, changeEvent));
+            }
+
+            @Override
+            public void onFeedDisconnected() {
+                // The client resumes from the last event id it received
+                subscriptions.remove(eventSink);
+                eventSink.close();
+            }
+        };
+        subscriptions.put(eventSink, new Subscription(sse, listener));
+
+        if(!changeFeed.addListener(listener, lastSeenVersion)) {
+            LOGGER.info("Change feed history does not reach back to version {}. Requesting resync.", lastSeenVersion);
+            OutboundSseEvent resyncEvent = sse.newEventBuilder()
+                    .id(String.valueOf(changeFeed.getLatestVersion()))
+                    .name(RESYNC_EVENT_NAME)
+                    .data(String.valueOf(changeFeed.getLatestVersion()))
+                    .build();
+            send(eventSink, resyncEvent);
+        }
+    }
+
+    private OutboundSseEvent toOutboundEvent(Sse sse, FestivalDataChangeEvent changeEvent) {
+        return sse.newEventBuilder()
+                .id(String.valueOf(changeEvent.getVersion()))
+                .name(CHANGE_EVENT_NAME)
+                .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                .data(FestivalDataChangeEvent.class, changeEvent)
+                .build();
+    }
+
+    private void send(SseEventSink eventSink, OutboundSseEvent event) {
+        eventSink.send(event).exceptionally(throwable -> {
+            // Client went away, stop delivering to it
+            unsubscribe(eventSink);
+            return null;
+        });
+    }
+
+    /**
+     * Sends a comment to every open stream, a failed write or a closed sink removes its listener from the feed.
+     */
+    void sendHeartbeats() {
+        subscriptions.forEach((eventSink, subscription) -> {
+            if(eventSink.isClosed()) {
+                unsubscribe(eventSink);
+            } else {
+                send(eventSink, subscription.sse.newEventBuilder().comment(HEARTBEAT_COMMENT).build());
+            }
+        });
+    }
+
+    private void unsubscribe(SseEventSink eventSink) {
+        Subscription subscription = subscriptions.remove(eventSink);
+        if(subscription != null) {
+            changeFeed.removeListener(subscription.listener);
+        }
+        eventSink.close();
+    }
+
+    private static class Subscription {
+        private final Sse sse;
+        private final FestivalDataChangeListener listener;
+
+        Subscription(Sse sse, FestivalDataChangeListener listener) {
+            this.sse = sse;
+            this.listener = listener;
+        }
+    }
+}
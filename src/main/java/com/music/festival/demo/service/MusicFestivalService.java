@@ -1,9 +1,12 @@
 package com.music.festival.demo.service;
 
+import com.music.festival.demo.model.CatalogueEntry;
 import com.music.festival.demo.model.RecordLabel;
 import com.music.festival.demo.rest.client.exception.ResponseParsingException;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Service layer interface for music festival application.
@@ -12,8 +15,68 @@ public interface MusicFestivalService {
 
     /**
      * Get a list of record labels with band and festival data.
-     * @return a list of {@link RecordLabel}s
+     * @return an unmodifiable list of {@link RecordLabel}s, sorted by name.
+     * Sorting or filtering it in place throws UnsupportedOperationException, copy it first.
      * @throws ResponseParsingException
      */
     List<RecordLabel> getAllFestivals() throws ResponseParsingException;
+
+    /**
+     * Fetch and restructure festival data without holding it in memory, bypassing the cache.
+     * Every distinct (record label, band, festival) entry is handed to the consumer in the order of {@link #getAllFestivals()}.
+     * @param entryConsumer
+     * @throws ResponseParsingException
+     * @throws IOException
+     */
+    void restructureFestivalDataOutOfCore(Consumer<CatalogueEntry> entryConsumer) throws ResponseParsingException, IOException;
+
+    /**
+     * Get the number of bands managed by a record label.
+     * @param recordLabelName
+     * @return number of bands, 0 for an unknown record label
+     * @throws ResponseParsingException
+     */
+    int getBandCountByRecordLabel(String recordLabelName) throws ResponseParsingException;
+
+    /**
+     * Get the number of distinct festivals attended by a band.
+     * Bands with the same name on different record labels are counted as one band.
+     * @param bandName
+     * @return number of festivals, 0 for an unknown band
+     * @throws ResponseParsingException
+     */
+    int getFestivalCountByBand(String bandName) throws ResponseParsingException;
+
+    /**
+     * Get the names of the most booked bands, ordered by festival count descending.
+     * @param limit maximum number of band names to return
+     * @return a list of band names
+     * @throws ResponseParsingException
+     */
+    List<String> getMostBookedBands(int limit) throws ResponseParsingException;
+
+    /**
+     * Get the names of record labels whose bands did not play any festival.
+     * @return a list of record label names
+     * @throws ResponseParsingException
+     */
+    List<String> getRecordLabelsWithoutFestivals() throws ResponseParsingException;
+
+    /**
+     * True if the band played the festival.
+     * @param bandName
+     * @param festivalName
+     * @return
+     * @throws ResponseParsingException
+     */
+    boolean hasPlayedFestival(String bandName, String festivalName) throws ResponseParsingException;
+
+    /**
+     * Checks many (band, festival) pairs in one call, given as two lists of equal size.
+     * @param bandNames
+     * @param festivalNames
+     * @return the answer for each pair, in the order of the lists
+     * @throws ResponseParsingException
+     */
+    boolean[] hasPlayedFestivals(List<String> bandNames, List<String> festivalNames) throws ResponseParsingException;
 }
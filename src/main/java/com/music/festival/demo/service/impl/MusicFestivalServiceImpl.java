@@ -1,14 +1,19 @@
 package com.music.festival.demo.service.impl;
 
 import com.music.festival.demo.cache.MusicFestivalCache;
+import com.music.festival.demo.external.ExternalFestivalDataRestructurer;
+import com.music.festival.demo.model.CatalogueEntry;
+import com.music.festival.demo.model.FestivalStatistics;
 import com.music.festival.demo.model.RecordLabel;
 import com.music.festival.demo.rest.client.exception.ResponseParsingException;
 import com.music.festival.demo.service.MusicFestivalService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Service layer implementation for music festival application.
@@ -19,9 +24,13 @@ public class MusicFestivalServiceImpl implements MusicFestivalService {
     @Autowired
     private MusicFestivalCache musicFestivalCache;
 
+    @Autowired
+    private ExternalFestivalDataRestructurer externalRestructurer;
+
     /**
      * Get a list of record labels with band and festival data.
-     * @return a list of {@link RecordLabel}s
+     * @return an unmodifiable list of {@link RecordLabel}s, sorted by name.
+     * Sorting or filtering it in place throws UnsupportedOperationException, copy it first.
      * @throws ResponseParsingException
      */
     @Override
@@ -29,4 +38,87 @@ public class MusicFestivalServiceImpl implements MusicFestivalService {
         List<RecordLabel> returnList = new ArrayList<>();
         return musicFestivalCache.getAllMusicFestivals();
     }
+
+    /**
+     * Fetch and restructure festival data without holding it in memory, bypassing the cache.
+     * @param entryConsumer
+     * @throws ResponseParsingException
+     * @throws IOException
+     */
+    @Override
+    public void restructureFestivalDataOutOfCore(Consumer<CatalogueEntry> entryConsumer) throws ResponseParsingException, IOException {
+        externalRestructurer.restructureFestivalData(entryConsumer);
+    }
+
+    /**
+     * Get the number of bands managed by a record label.
+     * @param recordLabelName
+     * @return number of bands, 0 for an unknown record label
+     * @throws ResponseParsingException
+     */
+    @Override
+    public int getBandCountByRecordLabel(String recordLabelName) throws ResponseParsingException {
+        FestivalStatistics statistics = musicFestivalCache.getFestivalStatistics();
+        return statistics.getBandCountByRecordLabel().getOrDefault(recordLabelName, 0);
+    }
+
+    /**
+     * Get the number of distinct festivals attended by a band.
+     * @param bandName
+     * @return number of festivals, 0 for an unknown band
+     * @throws ResponseParsingException
+     */
+    @Override
+    public int getFestivalCountByBand(String bandName) throws ResponseParsingException {
+        FestivalStatistics statistics = musicFestivalCache.getFestivalStatistics();
+        return statistics.getFestivalCountByBand().getOrDefault(bandName, 0);
+    }
+
+    /**
+     * Get the names of the most booked bands, ordered by festival count descending.
+     * @param limit maximum number of band names to return
+     * @return a list of band names
+     * @throws ResponseParsingException
+     */
+    @Override
+    public List<String> getMostBookedBands(int limit) throws ResponseParsingException {
+        List<String> mostBookedBands = musicFestivalCache.getFestivalStatistics().getMostBookedBands();
+        return mostBookedBands.subList(0, Math.max(0, Math.min(limit, mostBookedBands.size())));
+    }
+
+    /**
+     * Get the names of record labels whose bands did not play any festival.
+     * @return a list of record label names
+     * @throws ResponseParsingException
+     */
+    @Override
+    public List<String> getRecordLabelsWithoutFestivals() throws ResponseParsingException {
+        return musicFestivalCache.getFestivalStatistics().getRecordLabelsWithoutFestivals();
+    }
+
+    /**
+     * True if the band played the festival.
+     * @param bandName
+     * @param festivalName
+     * @return
+     * @throws ResponseParsingException
+     */
+    @Override
+    public boolean hasPlayedFestival(String bandName, String festivalName) throws ResponseParsingException {
+        return musicFestivalCache.getMembershipIndex().hasPlayed(bandName, festivalName);
+    }
+
+    /**
+     * Checks many (band, festival) pairs in one call, given as two lists of equal size.
+     * @param bandNames
+     * @param festivalNames
+     * @return the answer for each pair, in the order of the lists
+     * @throws ResponseParsingException
+     */
+    @Override
+    public boolean[] hasPlayedFestivals(List<String> bandNames, List<String> festivalNames) throws ResponseParsingException {
+        boolean[] results = new boolean[bandNames.size()];
+        musicFestivalCache.getMembershipIndex().hasPlayed(bandNames, festivalNames, results);
+        return results;
+    }
 }
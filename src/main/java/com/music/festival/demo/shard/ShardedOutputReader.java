@@ -0,0 +1,151 @@
+package com.music.festival.demo.shard;
+
+import com.music.festival.demo.model.ShardIndexEntry;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Reads the section of a single record label from output written by {@link ShardedOutputWriter}.
+ * The index is loaded once, sections are then read by positional reads on the shard, or from shards mapped into memory.
+ * Safe for concurrent reads.
+ */
+public class ShardedOutputReader implements Closeable {
+
+    private final Map<String, ShardIndexEntry> indexEntriesByRecordLabel;
+    private final Map<String, FileChannel> shardChannels = new HashMap<>();
+
+    /**
+     * Shards mapped into memory by file name, empty unless opened memory mapped
+     */
+    private final Map<String, ByteBuffer> mappedShards = new HashMap<>();
+
+    private ShardedOutputReader(Map<String, ShardIndexEntry> indexEntriesByRecordLabel) {
+        this.indexEntriesByRecordLabel = indexEntriesByRecordLabel;
+    }
+
+    /**
+     * Opens sharded output by loading its index and opening its shards.
+     * @param outputFile output file given to {@link ShardedOutputWriter#write}
+     * @param memoryMapped true to map shards into memory, shards over 2 GB are read by positional reads regardless
+     * @return {@link ShardedOutputReader}, to be closed by the caller
+     * @throws IOException when the index or a shard cannot be read
+     */
+    public static ShardedOutputReader open(Path outputFile, boolean memoryMapped) throws IOException {
+        ShardedOutputReader reader = new ShardedOutputReader(readIndex(ShardedOutputWriter.getIndexFile(outputFile)));
+        try {
+            for(ShardIndexEntry indexEntry : reader.indexEntriesByRecordLabel.values()) {
+                String shardFileName = indexEntry.getShardFile();
+                if(reader.shardChannels.containsKey(shardFileName)) {
+                    continue;
+                }
+                FileChannel shardChannel = FileChannel.open(outputFile.resolveSibling(shardFileName), StandardOpenOption.READ);
+                reader.shardChannels.put(shardFileName, shardChannel);
+                if(memoryMapped && shardChannel.size() <= Integer.MAX_VALUE) {
+                    reader.mappedShards.put(shardFileName, shardChannel.map(FileChannel.MapMode.READ_ONLY, 0, shardChannel.size()));
+                }
+            }
+        } catch (IOException e) {
+            reader.close();
+            throw e;
+        }
+        return reader;
+    }
+
+    /**
+     * Names of the indexed record labels, in output order.
+     * @return
+     */
+    public List<String> getRecordLabels() {
+        return new ArrayList<>(indexEntriesByRecordLabel.keySet());
+    }
+
+    /**
+     * Location of the section of a record label.
+     * @param recordLabelName
+     * @return {@link ShardIndexEntry}, null for an unknown record label
+     */
+    public ShardIndexEntry getIndexEntry(String recordLabelName) {
+        return indexEntriesByRecordLabel.get(recordLabelName);
+    }
+
+    /**
+     * Reads the lines of a record label with its bands and festivals.
+     * @param recordLabelName
+     * @return lines as written, empty for an unknown record label
+     * @throws IOException when the shard cannot be read
+     */
+    public List<String> readRecordLabel(String recordLabelName) throws IOException {
+        ShardIndexEntry indexEntry = indexEntriesByRecordLabel.get(recordLabelName);
+        if(indexEntry == null) {
+            return Collections.emptyList();
+        }
+
+        byte[] section = new byte[Math.toIntExact(indexEntry.getLength())];
+        ByteBuffer mappedShard = mappedShards.get(indexEntry.getShardFile());
+        if(mappedShard != null) {
+            // Duplicate, so that concurrent reads do not share a position
+            ByteBuffer sectionBuffer = mappedShard.duplicate();
+            sectionBuffer.position((int) indexEntry.getOffset());
+            sectionBuffer.get(section);
+        } else {
+            readFully(shardChannels.get(indexEntry.getShardFile()), ByteBuffer.wrap(section), indexEntry.getOffset());
+        }
+
+        try (BufferedReader sectionReader = new BufferedReader(new StringReader(new String(section, StandardCharsets.UTF_8)))) {
+            return sectionReader.lines().collect(toList());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for(FileChannel shardChannel : shardChannels.values()) {
+            try {
+                shardChannel.close();
+            } catch (IOException e) {
+                failure = failure != null ? failure : e;
+            }
+        }
+        if(failure != null) {
+            throw failure;
+        }
+    }
+
+    private static void readFully(FileChannel shardChannel, ByteBuffer section, long offset) throws IOException {
+        while(section.hasRemaining()) {
+            int read = shardChannel.read(section, offset + section.position());
+            if(read < 0) {
+                throw new EOFException("Shard ends before the indexed section.");
+            }
+        }
+    }
+
+    private static Map<String, ShardIndexEntry> readIndex(Path indexFile) throws IOException {
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if(inputStream.readInt() != ShardedOutputWriter.INDEX_MAGIC) {
+                throw new IOException("Not a shard index: " + indexFile);
+            }
+            int version = inputStream.readInt();
+            if(version != ShardedOutputWriter.INDEX_VERSION) {
+                throw new IOException("Unsupported shard index version " + version + ": " + indexFile);
+            }
+            int entryCount = inputStream.readInt();
+            Map<String, ShardIndexEntry> indexEntries = new LinkedHashMap<>();
+            for(int i = 0; i < entryCount; i++) {
+                ShardIndexEntry indexEntry = new ShardIndexEntry(inputStream.readUTF(), inputStream.readUTF(),
+                        inputStream.readLong(), inputStream.readLong(), inputStream.readInt());
+                indexEntries.put(indexEntry.getRecordLabel(), indexEntry);
+            }
+            return indexEntries;
+        }
+    }
+}
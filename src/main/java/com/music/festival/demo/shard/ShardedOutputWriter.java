@@ -0,0 +1,275 @@
+package com.music.festival.demo.shard;
+
+import com.music.festival.demo.model.Band;
+import com.music.festival.demo.model.RecordLabel;
+import com.music.festival.demo.model.ShardIndexEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Writes restructured festival data as shards, each holding a contiguous range of record labels, in parallel.
+ * A sidecar index locates the section of every record label by shard file, byte offset and byte length,
+ * so that {@link ShardedOutputReader} can read one record label without scanning the output.
+ * For an output file 'Data.txt' the shards are 'Data-000.txt', 'Data-001.txt', ... and the index is 'Data.idx'.
+ * The previous index is deleted before anything is written, and shards and index are written under temporary names
+ * and then moved into place, so that an index never points into shards of another write.
+ */
+@Component
+public class ShardedOutputWriter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardedOutputWriter.class);
+
+    static final int INDEX_MAGIC = 0x46534958;
+    static final int INDEX_VERSION = 1;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    /**
+     * System property output.shardCount is set to 4 by default.
+     * Fewer shards are written when there are fewer record labels.
+     */
+    @Value("${output.shardCount:4}")
+    private int shardCount = 4;
+
+    private final ExecutorService shardExecutor = Executors.newCachedThreadPool(new ShardWriterThreadFactory());
+
+    /**
+     * Writes the shards and the index for the given record labels.
+     * @param recordLabels record labels in output order
+     * @param renderer renders the lines of a record label
+     * @param outputFile output file the shard and index names are derived from
+     * @return index entries in output order
+     * @throws IOException when a shard or the index cannot be written
+     */
+    public List<ShardIndexEntry> write(List<RecordLabel> recordLabels, Function<RecordLabel, List<String>> renderer,
+                                       Path outputFile) throws IOException {
+        List<List<RecordLabel>> shards = splitIntoShards(recordLabels);
+
+        // Readers opening the output from now on fail instead of reading the old index against new shards
+        Path indexFile = getIndexFile(outputFile);
+        Files.deleteIfExists(indexFile);
+
+        // Write every shard on its own thread, under a temporary name
+        List<Path> temporaryFiles = new ArrayList<>();
+        List<Future<List<ShardIndexEntry>>> shardFutures = new ArrayList<>();
+        for(int shardNumber = 0; shardNumber < shards.size(); shardNumber++) {
+            List<RecordLabel> shard = shards.get(shardNumber);
+            Path shardFile = getShardFile(outputFile, shardNumber);
+            Path temporaryShardFile = getTemporaryFile(shardFile);
+            temporaryFiles.add(temporaryShardFile);
+            shardFutures.add(shardExecutor.submit(() -> writeShard(shard, renderer, temporaryShardFile, shardFile.getFileName().toString())));
+        }
+
+        // Collect index entries in shard order, after every shard has finished
+        List<ShardIndexEntry> indexEntries = new ArrayList<>();
+        IOException failure = null;
+        for(Future<List<ShardIndexEntry>> shardFuture : shardFutures) {
+            try {
+                indexEntries.addAll(shardFuture.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = new InterruptedIOException("Interrupted while writing shards.");
+            } catch (ExecutionException e) {
+                failure = failure != null ? failure : toIOException(e.getCause());
+            }
+        }
+        Path temporaryIndexFile = getTemporaryFile(indexFile);
+        temporaryFiles.add(temporaryIndexFile);
+        try {
+            if(failure != null) {
+                throw failure;
+            }
+            writeIndex(indexEntries, temporaryIndexFile);
+
+            // Shards first, the index last, so that the index only appears once all of its shards are in place
+            for(int shardNumber = 0; shardNumber < shards.size(); shardNumber++) {
+                moveIntoPlace(temporaryFiles.get(shardNumber), getShardFile(outputFile, shardNumber));
+            }
+            moveIntoPlace(temporaryIndexFile, indexFile);
+        } finally {
+            for(Path temporaryFile : temporaryFiles) {
+                Files.deleteIfExists(temporaryFile);
+            }
+        }
+        deleteStaleShards(outputFile, shards.size());
+        LOGGER.debug("Wrote {} record labels to {} shards.", indexEntries.size(), shards.size());
+        return indexEntries;
+    }
+
+    /**
+     * Path of the index written for the given output file.
+     * @param outputFile
+     * @return
+     */
+    public static Path getIndexFile(Path outputFile) {
+        return outputFile.resolveSibling(getBaseName(outputFile) + ".idx");
+    }
+
+    /**
+     * Path of a shard written for the given output file.
+     * @param outputFile
+     * @param shardNumber
+     * @return
+     */
+    public static Path getShardFile(Path outputFile, int shardNumber) {
+        String fileName = outputFile.getFileName().toString();
+        String extension = fileName.substring(getBaseName(outputFile).length());
+        return outputFile.resolveSibling(String.format("%s-%03d%s", getBaseName(outputFile), shardNumber, extension));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shardExecutor.shutdownNow();
+    }
+
+    /**
+     * Splits record labels into contiguous ranges with about the same number of lines each.
+     */
+    private List<List<RecordLabel>> splitIntoShards(List<RecordLabel> recordLabels) {
+        long[] lineCounts = new long[recordLabels.size()];
+        long totalLineCount = 0;
+        for(int i = 0; i < recordLabels.size(); i++) {
+            lineCounts[i] = getLineCount(recordLabels.get(i));
+            totalLineCount += lineCounts[i];
+        }
+
+        int shards = Math.max(1, Math.min(shardCount, recordLabels.size()));
+        List<List<RecordLabel>> shardList = new ArrayList<>();
+        List<RecordLabel> shard = new ArrayList<>();
+        long lineCount = 0;
+        for(int i = 0; i < recordLabels.size(); i++) {
+            shard.add(recordLabels.get(i));
+            lineCount += lineCounts[i];
+
+            // Close the shard once it reaches its share of all lines, leaving a record label for every remaining shard
+            int remainingShards = shards - shardList.size() - 1;
+            boolean shareReached = lineCount * shards >= totalLineCount * (shardList.size() + 1);
+            if(remainingShards > 0 && (shareReached || recordLabels.size() - i - 1 == remainingShards)) {
+                shardList.add(shard);
+                shard = new ArrayList<>();
+            }
+        }
+        if(!shard.isEmpty()) {
+            shardList.add(shard);
+        }
+        return shardList;
+    }
+
+    private long getLineCount(RecordLabel recordLabel) {
+        long lineCount = 1;
+        if(recordLabel.getBands() != null) {
+            for(Band band : recordLabel.getBands().values()) {
+                lineCount += 1 + (band.getFestivals() == null ? 0 : band.getFestivals().size());
+            }
+        }
+        return lineCount;
+    }
+
+    /**
+     * Writes the lines of a range of record labels.
+     * @param shardFile file written to
+     * @param shardFileName file name recorded in the index entries
+     */
+    private List<ShardIndexEntry> writeShard(List<RecordLabel> shard, Function<RecordLabel, List<String>> renderer,
+                                             Path shardFile, String shardFileName) throws IOException {
+        List<ShardIndexEntry> indexEntries = new ArrayList<>();
+        try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(shardFile), BUFFER_SIZE)) {
+            long offset = 0;
+            for(RecordLabel recordLabel : shard) {
+                long sectionOffset = offset;
+                List<String> lines = renderer.apply(recordLabel);
+                for(String line : lines) {
+                    byte[] encodedLine = line.getBytes(StandardCharsets.UTF_8);
+                    outputStream.write(encodedLine);
+                    outputStream.write(LINE_SEPARATOR);
+                    offset += encodedLine.length + LINE_SEPARATOR.length;
+                }
+                indexEntries.add(new ShardIndexEntry(recordLabel.getName(), shardFileName, sectionOffset,
+                        offset - sectionOffset, lines.size()));
+            }
+        }
+        return indexEntries;
+    }
+
+    private void writeIndex(List<ShardIndexEntry> indexEntries, Path indexFile) throws IOException {
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexFile), BUFFER_SIZE))) {
+            outputStream.writeInt(INDEX_MAGIC);
+            outputStream.writeInt(INDEX_VERSION);
+            outputStream.writeInt(indexEntries.size());
+            for(ShardIndexEntry indexEntry : indexEntries) {
+                outputStream.writeUTF(indexEntry.getRecordLabel());
+                outputStream.writeUTF(indexEntry.getShardFile());
+                outputStream.writeLong(indexEntry.getOffset());
+                outputStream.writeLong(indexEntry.getLength());
+                outputStream.writeInt(indexEntry.getLineCount());
+            }
+        }
+    }
+
+    /**
+     * Deletes shards left over from an earlier write with more shards, the new index no longer refers to them.
+     */
+    private void deleteStaleShards(Path outputFile, int shards) throws IOException {
+        for(int shardNumber = shards; Files.deleteIfExists(getShardFile(outputFile, shardNumber)); shardNumber++) {
+            LOGGER.debug("Deleted stale shard {}", getShardFile(outputFile, shardNumber));
+        }
+    }
+
+    /**
+     * Replaces the target with the written file. Readers that have the old file open keep reading it.
+     */
+    private void moveIntoPlace(Path writtenFile, Path target) throws IOException {
+        try {
+            Files.move(writtenFile, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(writtenFile, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static Path getTemporaryFile(Path file) {
+        return file.resolveSibling(file.getFileName() + TEMPORARY_SUFFIX);
+    }
+
+    private IOException toIOException(Throwable cause) {
+        if(cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        return new IOException("Exception while writing shard. Cause: " + cause, cause);
+    }
+
+    private static String getBaseName(Path outputFile) {
+        String fileName = outputFile.getFileName().toString();
+        int extensionIndex = fileName.lastIndexOf('.');
+        return extensionIndex > 0 ? fileName.substring(0, extensionIndex) : fileName;
+    }
+
+    /**
+     * Daemon threads, so that shard writers never keep the application alive.
+     */
+    private static class ShardWriterThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "shard-writer-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.music.festival.demo;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Callable;
+
+/**
+ * Measures bytes allocated by the current thread, for allocation budget tests.
+ * Relies on the per-thread allocation counters of HotSpot's ThreadMXBean.
+ */
+public final class AllocationMeter {
+
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASUREMENT_ROUNDS = 5;
+
+    private AllocationMeter() {
+    }
+
+    /**
+     * True if the JVM counts allocated bytes per thread. Budget tests are skipped otherwise.
+     * @return
+     */
+    public static boolean isSupported() {
+        java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if(!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+            return false;
+        }
+        com.sun.management.ThreadMXBean allocationMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        if(!allocationMXBean.isThreadAllocatedMemorySupported()) {
+            return false;
+        }
+        allocationMXBean.setThreadAllocatedMemoryEnabled(true);
+        return allocationMXBean.isThreadAllocatedMemoryEnabled();
+    }
+
+    /**
+     * Bytes allocated per operation by the current thread.
+     * The operation is warmed up first, so that the JIT compiled code is measured,
+     * and the lowest of several rounds is reported, so that one-off allocations such as class loading do not count.
+     * @param operation returns the number of operations it performed, e.g. reads, records or lines
+     * @return bytes allocated per operation
+     * @throws Exception thrown by the operation
+     */
+    public static double bytesPerOperation(Callable<Long> operation) throws Exception {
+        for(int i = 0; i < WARMUP_ROUNDS; i++) {
+            operation.call();
+        }
+
+        double lowestBytesPerOperation = Double.MAX_VALUE;
+        for(int i = 0; i < MEASUREMENT_ROUNDS; i++) {
+            long allocatedBefore = getAllocatedBytes();
+            long operationCount = operation.call();
+            long allocatedBytes = getAllocatedBytes() - allocatedBefore;
+            lowestBytesPerOperation = Math.min(lowestBytesPerOperation, allocatedBytes / (double) Math.max(operationCount, 1));
+        }
+        return lowestBytesPerOperation;
+    }
+
+    /**
+     * Budget configured by a system property, e.g. -DallocationBudget.cacheRead=64
+     * @param name budget name, without the allocationBudget. prefix
+     * @param defaultBudget bytes per operation used when the property is not set
+     * @return bytes per operation
+     */
+    public static long getBudget(String name, long defaultBudget) {
+        return Long.getLong("allocationBudget." + name, defaultBudget);
+    }
+
+    /**
+     * Budget as a multiple of a baseline measured in the same run, configured by a system property,
+     * e.g. -DallocationBudget.renderLineRatio=4
+     * Object and string layouts differ between JVMs, heap sizes and compressed oops settings,
+     * a baseline allocating the same data shape scales with them.
+     * @param name budget name, without the allocationBudget. prefix
+     * @param defaultRatio multiple of the baseline used when the property is not set
+     * @return multiple of the baseline
+     */
+    public static double getBudgetRatio(String name, double defaultRatio) {
+        String ratio = System.getProperty("allocationBudget." + name);
+        return ratio == null ? defaultRatio : Double.parseDouble(ratio);
+    }
+
+    private static long getAllocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
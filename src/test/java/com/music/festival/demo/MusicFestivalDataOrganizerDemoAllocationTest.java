@@ -0,0 +1,86 @@
+package com.music.festival.demo;
+
+import com.music.festival.demo.model.Band;
+import com.music.festival.demo.model.Festival;
+import com.music.festival.demo.model.RecordLabel;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Fails when rendering the output allocates more per line than its budget.
+ * The budget is a multiple of the bytes per line of copying the rendered lines, measured in the same run,
+ * and can be changed with a system property, e.g. mvn test -DallocationBudget.renderLineRatio=4
+ */
+public class MusicFestivalDataOrganizerDemoAllocationTest {
+
+    private static final int RECORD_LABEL_COUNT = 200;
+
+    /**
+     * Rendering allocates the indented line and its slot in the list of lines, plus the StringBuilder of the
+     * concatenation unless the JIT optimizes it away.
+     * Measured at 0.8 to 1.8 times the baseline on JDK 8, 11, 17 and 21, with and without compressed oops.
+     */
+    private static final double RENDER_LINE_BUDGET_RATIO = AllocationMeter.getBudgetRatio("renderLineRatio", 3);
+
+    private MusicFestivalDataOrganizerDemo demoApp;
+    private List<RecordLabel> recordLabels;
+
+    @Before
+    public void setUp() {
+        assumeTrue("Per-thread allocation counters are not supported by this JVM", AllocationMeter.isSupported());
+
+        demoApp = new MusicFestivalDataOrganizerDemo();
+        recordLabels = getRecordLabels();
+    }
+
+    @Test
+    public void testRenderAllocationBudget() throws Exception {
+        double bytesPerLine = AllocationMeter.bytesPerOperation(() -> {
+            List<String> lines = demoApp.getOutputFileContent(recordLabels);
+            return (long) lines.size();
+        });
+
+        // Baseline: a copy of every rendered line, in a list of lines
+        List<String> renderedLines = demoApp.getOutputFileContent(recordLabels);
+        double baselineBytesPerLine = AllocationMeter.bytesPerOperation(() -> {
+            List<String> lines = new ArrayList<>();
+            for(String renderedLine : renderedLines) {
+                lines.add(new String(renderedLine.toCharArray()));
+            }
+            return (long) lines.size();
+        });
+
+        double budget = baselineBytesPerLine * RENDER_LINE_BUDGET_RATIO;
+        assertTrue(String.format("Allocated %.1f bytes per rendered line, budget is %.1f bytes (%.1f times the baseline of %.1f bytes)",
+                bytesPerLine, budget, RENDER_LINE_BUDGET_RATIO, baselineBytesPerLine),
+                bytesPerLine <= budget);
+    }
+
+    /**
+     * Record labels of 10 bands with 10 festivals each.
+     */
+    private List<RecordLabel> getRecordLabels() {
+        List<RecordLabel> recordLabels = new ArrayList<>();
+        for(int i = 0; i < RECORD_LABEL_COUNT; i++) {
+            RecordLabel recordLabel = new RecordLabel("Record Label " + i);
+            Map<String, Band> bands = new LinkedHashMap<>();
+            for(int j = 0; j < 10; j++) {
+                Band band = new Band("Band " + i + "-" + j);
+                Map<String, Festival> festivals = new LinkedHashMap<>();
+                for(int k = 0; k < 10; k++) {
+                    festivals.put("Festival " + k, new Festival("Festival " + k));
+                }
+                band.setFestivals(festivals);
+                bands.put(band.getName(), band);
+            }
+            recordLabel.setBands(bands);
+            recordLabels.add(recordLabel);
+        }
+        return recordLabels;
+    }
+}
@@ -6,6 +6,7 @@ import com.google.common.io.Resources;
 import com.music.festival.demo.rest.client.MusicFestivalRESTApiClient;
 import com.music.festival.demo.rest.client.exception.ResponseParsingException;
 import com.music.festival.demo.rest.client.model.Festival;
+import com.music.festival.demo.shard.ShardedOutputReader;
 import org.hamcrest.Matchers;
 import org.junit.Before;
 import org.junit.Test;
@@ -21,9 +22,13 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
+import java.util.function.Consumer;
 
 import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(properties = "listFestivalsOnApplicationStart=false")
@@ -39,12 +44,18 @@ public class MusicFestivalDataOrganizerDemoTest {
     @Autowired
     MusicFestivalDataOrganizerDemo demoApp;
 
-    private static final String TEST_OUTPUT_FILE_PATH = "TEST-RestructuredFestivalData.txt";
+    private static final String TEST_OUTPUT_FILE_NAME = "TEST-RestructuredFestivalData.txt";
+    private static final String TEST_OUTPUT_FILE_PATH = "target/" + TEST_OUTPUT_FILE_NAME;
     private static final String VALID_TEST_FILE_PATH = Resources.getResource("Expected_Restructured_Festival_Data.txt").getPath();
 
     @Before
     public void setUp() throws ResponseParsingException, IOException {
         Mockito.when(mockApiClient.getFestivals()).thenReturn(getDummyFestivalsList());
+        Mockito.doAnswer(invocation -> {
+            Consumer<Festival> festivalConsumer = invocation.getArgument(0);
+            getDummyFestivalsList().forEach(festivalConsumer);
+            return null;
+        }).when(mockApiClient).getFestivals(any(Consumer.class));
     }
 
     @Test
@@ -71,6 +82,54 @@ public class MusicFestivalDataOrganizerDemoTest {
         assertThat("One or more lines in the output file mismatch with the expected.", linesToVerify, Matchers.equalTo(linesExpected));
     }
 
+    @Test
+    public void testListFestivalsOutOfCore() throws IOException, ResponseParsingException {
+        ReflectionTestUtils.setField(demoApp, "listFestivalDataOnAppStart", Boolean.TRUE);
+        ReflectionTestUtils.setField(demoApp, "outOfCoreEnabled", Boolean.TRUE);
+        ReflectionTestUtils.setField(demoApp, "outputFilePath", TEST_OUTPUT_FILE_PATH);
+
+        try {
+            // Call listFestivals() to create the output file from festival data restructured on disk.
+            demoApp.listFestivals();
+        } finally {
+            ReflectionTestUtils.setField(demoApp, "outOfCoreEnabled", Boolean.FALSE);
+        }
+
+        // Output is identical to the in-memory restructure
+        List<String> linesToVerify = Files.readAllLines(Paths.get(TEST_OUTPUT_FILE_PATH));
+        List<String> linesExpected = Files.readAllLines(Paths.get(VALID_TEST_FILE_PATH));
+        assertThat("One or more lines in the output file mismatch with the expected.", linesToVerify, Matchers.equalTo(linesExpected));
+    }
+
+    @Test
+    public void testListFestivalsSharded() throws IOException, ResponseParsingException {
+        Path outputDirectory = Files.createTempDirectory("sharded-output-test");
+        ReflectionTestUtils.setField(demoApp, "listFestivalDataOnAppStart", Boolean.TRUE);
+        ReflectionTestUtils.setField(demoApp, "shardedOutput", Boolean.TRUE);
+        ReflectionTestUtils.setField(demoApp, "outputFilePath", outputDirectory.resolve(TEST_OUTPUT_FILE_NAME).toString());
+
+        try {
+            // Call listFestivals() to create the shards and their index.
+            demoApp.listFestivals();
+
+            // Record labels read one at a time through the index add up to the single output file
+            List<String> linesToVerify = new ArrayList<>();
+            try (ShardedOutputReader reader = ShardedOutputReader.open(outputDirectory.resolve(TEST_OUTPUT_FILE_NAME), false)) {
+                for(String recordLabelName : reader.getRecordLabels()) {
+                    linesToVerify.addAll(reader.readRecordLabel(recordLabelName));
+                }
+            }
+            List<String> linesExpected = Files.readAllLines(Paths.get(VALID_TEST_FILE_PATH));
+            assertThat("One or more lines in the shards mismatch with the expected.", linesToVerify, Matchers.equalTo(linesExpected));
+        } finally {
+            ReflectionTestUtils.setField(demoApp, "shardedOutput", Boolean.FALSE);
+            try (Stream<Path> outputFiles = Files.list(outputDirectory)) {
+                outputFiles.forEach(outputFile -> outputFile.toFile().delete());
+            }
+            Files.delete(outputDirectory);
+        }
+    }
+
     private List<Festival> getDummyFestivalsList() throws IOException {
         String festivalsString = "[{\"name\":\"LOL-palooza\",\"bands\":[{\"name\":\"Werewolf Weekday\",\"recordLabel\":\"XS Recordings\"},{\"name\":\"Jill Black\",\"recordLabel\":\"Fourth Woman Records\"},{\"name\":\"Frank Jupiter\",\"recordLabel\":\"Pacific Records\"},{\"name\":\"Winter Primates\",\"recordLabel\":\"\"}]},{\"name\":\"Small Night In\",\"bands\":[{\"name\":\"Wild Antelope\",\"recordLabel\":\"Marner Sis. Recording\"},{\"name\":\"Squint-281\",\"recordLabel\":\"Outerscope\"},{\"name\":\"Green Mild Cold Capsicum\",\"recordLabel\":\"Marner Sis. Recording\"},{\"name\":\"Yanke East\",\"recordLabel\":\"MEDIOCRE Music\"},{\"name\":\"The Black Dashes\",\"recordLabel\":\"Fourth Woman Records\"}]},{\"name\":\"Trainerella\",\"bands\":[{\"name\":\"Wild Antelope\",\"recordLabel\":\"Still Bottom Records\"},{\"name\":\"YOUKRANE\",\"recordLabel\":\"Anti Records\"},{\"name\":\"Adrian Venti\",\"recordLabel\":\"Monocracy Records\"},{\"name\":\"Manish Ditch\",\"recordLabel\":\"ACR\"}]},{\"name\":\"Twisted Tour\",\"bands\":[{\"name\":\"Auditones\",\"recordLabel\":\"Marner Sis. Recording\"},{\"name\":\"Squint-281\"},{\"name\":\"Summon\",\"recordLabel\":\"Outerscope\"}]},{\"bands\":[{\"name\":\"Critter Girls\",\"recordLabel\":\"ACR\"},{\"name\":\"Propeller\",\"recordLabel\":\"Pacific Records\"}]}]";;
         ObjectMapper objectMapper = new ObjectMapper();
@@ -0,0 +1,99 @@
+package com.music.festival.demo.cache;
+
+import com.music.festival.demo.model.Band;
+import com.music.festival.demo.model.Festival;
+import com.music.festival.demo.model.RecordLabel;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class FestivalMembershipIndexTest {
+
+    @Test
+    public void testHasPlayed() {
+        for(boolean bloomFilterEnabled : new boolean[]{false, true}) {
+            FestivalMembershipIndex index = FestivalMembershipIndex.build(getRecordLabelsMap(), bloomFilterEnabled);
+
+            assertEquals(3, index.getBandCount());
+            assertEquals(2, index.getFestivalCount());
+
+            assertTrue(index.hasPlayed("Wild Antelope", "Small Night In"));
+            assertTrue(index.hasPlayed("Wild Antelope", "Trainerella"));
+            assertTrue(index.hasPlayed("Manish Ditch", "Trainerella"));
+            assertFalse(index.hasPlayed("Manish Ditch", "Small Night In"));
+
+            // Festivals without a name are not indexed
+            assertFalse(index.hasPlayed("Critter Girls", ""));
+
+            // Unknown names
+            assertFalse(index.hasPlayed("Unknown Band", "Trainerella"));
+            assertFalse(index.hasPlayed("Wild Antelope", "Unknown Festival"));
+            assertFalse(index.hasPlayed(null, "Trainerella"));
+        }
+    }
+
+    @Test
+    public void testHasPlayedBatch() {
+        FestivalMembershipIndex index = FestivalMembershipIndex.build(getRecordLabelsMap(), true);
+        List<String> bandNames = Arrays.asList("Wild Antelope", "Critter Girls", "Manish Ditch");
+        List<String> festivalNames = Arrays.asList("Trainerella", "Trainerella", "Trainerella");
+        boolean[] results = new boolean[3];
+
+        index.hasPlayed(bandNames, festivalNames, results);
+
+        assertArrayEquals(new boolean[]{true, false, true}, results);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHasPlayedBatchWithMismatchedSizes() {
+        FestivalMembershipIndex index = FestivalMembershipIndex.build(getRecordLabelsMap(), true);
+        index.hasPlayed(Arrays.asList("Wild Antelope"), Collections.emptyList(), new boolean[1]);
+    }
+
+    @Test
+    public void testBloomFilterHasNoFalseNegatives() {
+        Map<String, RecordLabel> recordLabelsMap = new HashMap<>();
+        RecordLabel recordLabel = new RecordLabel("Label");
+        recordLabel.setBands(new HashMap<>());
+        recordLabelsMap.put(recordLabel.getName(), recordLabel);
+        for(int bandNumber = 0; bandNumber < 500; bandNumber++) {
+            Band band = new Band("Band " + bandNumber);
+            band.setFestivals(new HashMap<>());
+            for(int festivalNumber = bandNumber % 7; festivalNumber < 100; festivalNumber += 7) {
+                band.getFestivals().put("Festival " + festivalNumber, new Festival("Festival " + festivalNumber));
+            }
+            recordLabel.getBands().put(band.getName(), band);
+        }
+
+        FestivalMembershipIndex index = FestivalMembershipIndex.build(recordLabelsMap, true);
+
+        for(int bandNumber = 0; bandNumber < 500; bandNumber++) {
+            for(int festivalNumber = 0; festivalNumber < 100; festivalNumber++) {
+                assertEquals(festivalNumber % 7 == bandNumber % 7, index.hasPlayed("Band " + bandNumber, "Festival " + festivalNumber));
+            }
+        }
+    }
+
+    private Map<String, RecordLabel> getRecordLabelsMap() {
+        Map<String, RecordLabel> recordLabelsMap = new HashMap<>();
+        recordLabelsMap.put("Marner Sis. Recording", getRecordLabel("Marner Sis. Recording", "Wild Antelope", "Small Night In"));
+        recordLabelsMap.put("Still Bottom Records", getRecordLabel("Still Bottom Records", "Wild Antelope", "Trainerella"));
+        RecordLabel acr = getRecordLabel("ACR", "Manish Ditch", "Trainerella");
+        Band critterGirls = new Band("Critter Girls");
+        critterGirls.setFestivals(Collections.singletonMap("", new Festival("")));
+        acr.getBands().put(critterGirls.getName(), critterGirls);
+        recordLabelsMap.put("ACR", acr);
+        return recordLabelsMap;
+    }
+
+    private RecordLabel getRecordLabel(String recordLabelName, String bandName, String festivalName) {
+        Band band = new Band(bandName);
+        band.setFestivals(Collections.singletonMap(festivalName, new Festival(festivalName)));
+        RecordLabel recordLabel = new RecordLabel(recordLabelName);
+        recordLabel.setBands(new HashMap<>());
+        recordLabel.getBands().put(bandName, band);
+        return recordLabel;
+    }
+}
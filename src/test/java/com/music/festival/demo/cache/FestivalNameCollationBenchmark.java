@@ -0,0 +1,71 @@
+package com.music.festival.demo.cache;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.text.Collator;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares sorting names in natural order, with a plain {@link Collator}
+ * and with {@link FestivalNameComparator} reusing precomputed collation keys.
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Dbenchmark=FestivalNameCollationBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FestivalNameCollationBenchmark {
+
+    @Param({"1000", "10000"})
+    private int nameCount;
+
+    private List<String> names;
+    private Collator collator;
+    private FestivalNameComparator warmComparator;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        String[] words = {"Records", "recordings", "Music", "MUSIC", "Émile", "Élan", "acr", "ACR", "Sis.", "Antelope", "Wild", "wölf"};
+        names = new ArrayList<>();
+        for(int i = 0; i < nameCount; i++) {
+            names.add(words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)] + " " + i);
+        }
+        collator = Collator.getInstance(Locale.ENGLISH);
+
+        // Collation keys of every name are already known, as for names sorted again within one restructure
+        warmComparator = FestivalNameComparator.forMode(CollationMode.LOCALE, Locale.ENGLISH);
+        new ArrayList<>(names).sort(warmComparator);
+    }
+
+    @Benchmark
+    public List<String> naturalOrder() {
+        List<String> sortedNames = new ArrayList<>(names);
+        sortedNames.sort(FestivalNameComparator.forMode(CollationMode.NATURAL, Locale.ENGLISH));
+        return sortedNames;
+    }
+
+    @Benchmark
+    public List<String> plainCollator() {
+        List<String> sortedNames = new ArrayList<>(names);
+        sortedNames.sort(collator);
+        return sortedNames;
+    }
+
+    @Benchmark
+    public List<String> collationKeysComputedOnce() {
+        List<String> sortedNames = new ArrayList<>(names);
+        sortedNames.sort(FestivalNameComparator.forMode(CollationMode.LOCALE, Locale.ENGLISH));
+        return sortedNames;
+    }
+
+    @Benchmark
+    public List<String> collationKeysReused() {
+        List<String> sortedNames = new ArrayList<>(names);
+        sortedNames.sort(warmComparator);
+        return sortedNames;
+    }
+}
@@ -0,0 +1,41 @@
+package com.music.festival.demo.cache;
+
+import org.hamcrest.Matchers;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class FestivalNameComparatorTest {
+
+    private static final List<String> NAMES = Arrays.asList("Marner Sis. Recording", "MEDIOCRE Music", "ACR", "acr", "Émile Records", "Anti Records", "Zulu Records", "");
+
+    @Test
+    public void testNaturalOrdering() {
+        List<String> names = new ArrayList<>(NAMES);
+        names.sort(FestivalNameComparator.forMode(CollationMode.NATURAL, Locale.ENGLISH));
+
+        assertThat(names, Matchers.contains("", "ACR", "Anti Records", "MEDIOCRE Music", "Marner Sis. Recording", "Zulu Records", "acr", "Émile Records"));
+    }
+
+    @Test
+    public void testLocaleOrdering() {
+        FestivalNameComparator comparator = FestivalNameComparator.forMode(CollationMode.LOCALE, Locale.ENGLISH);
+        List<String> names = new ArrayList<>(NAMES);
+        names.sort(comparator);
+
+        assertThat(names, Matchers.contains("", "acr", "ACR", "Anti Records", "Émile Records", "Marner Sis. Recording", "MEDIOCRE Music", "Zulu Records"));
+
+        // Collation keys are computed once per distinct name
+        names.sort(comparator.reversed());
+        assertEquals(NAMES.size(), comparator.getCollationKeyCount());
+
+        // Equally collating names are still ordered consistently
+        assertEquals(0, comparator.compare("ACR", "ACR"));
+        assertTrue(comparator.compare("acr", "ACR") < 0);
+    }
+}
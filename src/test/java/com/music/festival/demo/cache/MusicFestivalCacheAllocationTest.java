@@ -0,0 +1,147 @@
+package com.music.festival.demo.cache;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.music.festival.demo.AllocationMeter;
+import com.music.festival.demo.feed.FestivalDataChangeFeed;
+import com.music.festival.demo.model.RecordLabel;
+import com.music.festival.demo.rest.client.MusicFestivalRESTApiClient;
+import com.music.festival.demo.rest.client.model.Band;
+import com.music.festival.demo.rest.client.model.BandsList;
+import com.music.festival.demo.rest.client.model.Festival;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.*;
+
+/**
+ * Fails when the cache read or restructure paths allocate more per operation than their budget.
+ * The read budget is bytes per read, the restructure budget a multiple of a baseline measured in the same run.
+ * Both can be changed with system properties, e.g. mvn test -DallocationBudget.cacheRead=64 -DallocationBudget.restructureRecordRatio=4
+ */
+public class MusicFestivalCacheAllocationTest {
+
+    private static final int FESTIVAL_COUNT = 500;
+    private static final int BANDS_PER_FESTIVAL = 20;
+    private static final int READS_PER_ROUND = 10000;
+
+    /**
+     * Reads only check staleness and allocate nothing, a sort or copy of the 500 record labels per read would allocate kilobytes
+     */
+    private static final long CACHE_READ_BUDGET = AllocationMeter.getBudget("cacheRead", 16);
+
+    /**
+     * Restructuring allocates the band and festival model objects and their map entries for every record.
+     * Measured at 2.2 to 2.4 times the baseline of a festival per band appearance in a map per band,
+     * on JDK 8, 11, 17 and 21, with and without compressed oops.
+     */
+    private static final double RESTRUCTURE_RECORD_BUDGET_RATIO = AllocationMeter.getBudgetRatio("restructureRecordRatio", 4);
+
+    private MusicFestivalCache cache;
+    private List<Festival> festivals;
+    private Logger cacheLogger;
+    private Level cacheLogLevel;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue("Per-thread allocation counters are not supported by this JVM", AllocationMeter.isSupported());
+
+        festivals = getFestivals();
+        MusicFestivalRESTApiClient apiClient = mock(MusicFestivalRESTApiClient.class);
+        when(apiClient.getFestivals()).thenReturn(festivals);
+        cache = new MusicFestivalCache(apiClient, new FestivalDataChangeFeed());
+
+        // Measure at the logging level of logback-spring.xml, plain logback defaults to DEBUG in tests
+        cacheLogger = (Logger) LoggerFactory.getLogger(MusicFestivalCache.class);
+        cacheLogLevel = cacheLogger.getLevel();
+        cacheLogger.setLevel(Level.INFO);
+    }
+
+    @After
+    public void tearDown() {
+        if(cacheLogger != null) {
+            cacheLogger.setLevel(cacheLogLevel);
+        }
+    }
+
+    @Test
+    public void testCacheReadAllocationBudget() throws Exception {
+        assertEquals(FESTIVAL_COUNT, cache.getAllMusicFestivals().size());
+
+        double bytesPerRead = AllocationMeter.bytesPerOperation(() -> {
+            long recordLabelCount = 0;
+            for(int i = 0; i < READS_PER_ROUND; i++) {
+                recordLabelCount += cache.getAllMusicFestivals().size();
+                recordLabelCount += cache.getFestivalStatistics() == null ? 0 : 1;
+                recordLabelCount += cache.getMembershipIndex() == null ? 0 : 1;
+            }
+            assertTrue(recordLabelCount > 0);
+            return 3L * READS_PER_ROUND;
+        });
+
+        assertWithinBudget("cache read", bytesPerRead, CACHE_READ_BUDGET);
+    }
+
+    @Test
+    public void testRestructureAllocationBudget() throws Exception {
+        long recordCount = (long) FESTIVAL_COUNT * BANDS_PER_FESTIVAL;
+
+        double bytesPerRecord = AllocationMeter.bytesPerOperation(() -> {
+            Map<String, RecordLabel> recordLabelsMap = new HashMap<>();
+            cache.restructureFestivalData(festivals, recordLabelsMap, new FestivalStatisticsCollector());
+            assertEquals(FESTIVAL_COUNT, recordLabelsMap.size());
+            return recordCount;
+        });
+
+        // Baseline: the festival of every band appearance, in a map of festivals per band
+        double baselineBytesPerRecord = AllocationMeter.bytesPerOperation(() -> {
+            Map<String, Map<String, com.music.festival.demo.model.Festival>> festivalsByBand = new HashMap<>();
+            for(Festival festival : festivals) {
+                for(Band band : festival.getBands()) {
+                    festivalsByBand.computeIfAbsent(band.getName(), bandName -> new LinkedHashMap<>())
+                            .put(festival.getName(), new com.music.festival.demo.model.Festival(festival.getName()));
+                }
+            }
+            assertEquals(FESTIVAL_COUNT, festivalsByBand.size());
+            return recordCount;
+        });
+
+        double budget = baselineBytesPerRecord * RESTRUCTURE_RECORD_BUDGET_RATIO;
+        assertTrue(String.format("Allocated %.1f bytes per restructure record, budget is %.1f bytes (%.1f times the baseline of %.1f bytes)",
+                bytesPerRecord, budget, RESTRUCTURE_RECORD_BUDGET_RATIO, baselineBytesPerRecord),
+                bytesPerRecord <= budget);
+    }
+
+    private void assertWithinBudget(String operation, double bytesPerOperation, long budget) {
+        assertTrue(String.format("Allocated %.1f bytes per %s, budget is %d bytes", bytesPerOperation, operation, budget),
+                bytesPerOperation <= budget);
+    }
+
+    /**
+     * Festivals with every band signed to its own record label, so each record adds a band and a festival.
+     */
+    private List<Festival> getFestivals() {
+        List<Festival> festivals = new ArrayList<>();
+        for(int i = 0; i < FESTIVAL_COUNT; i++) {
+            BandsList bands = new BandsList();
+            for(int j = 0; j < BANDS_PER_FESTIVAL; j++) {
+                int bandNumber = (i + j) % FESTIVAL_COUNT;
+                Band band = new Band();
+                band.setName("Band " + bandNumber);
+                band.setRecordLabel("Record Label " + bandNumber);
+                bands.add(band);
+            }
+            Festival festival = new Festival();
+            festival.setName("Festival " + i);
+            festival.setBands(bands);
+            festivals.add(festival);
+        }
+        return festivals;
+    }
+}
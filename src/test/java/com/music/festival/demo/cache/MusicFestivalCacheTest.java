@@ -3,8 +3,13 @@ package com.music.festival.demo.cache;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.cache.CacheBuilder;
+import com.music.festival.demo.feed.FestivalDataChangeFeed;
 import com.music.festival.demo.model.Band;
+import com.music.festival.demo.model.CatalogueEntry;
+import com.music.festival.demo.model.FestivalDataChangeEvent;
+import com.music.festival.demo.model.FestivalStatistics;
 import com.music.festival.demo.model.RecordLabel;
+import com.music.festival.demo.pipeline.PipelinedRefreshExecutor;
 import com.music.festival.demo.rest.client.MusicFestivalRESTApiClient;
 import com.music.festival.demo.rest.client.exception.ResponseParsingException;
 import com.music.festival.demo.rest.client.model.Festival;
@@ -18,10 +23,14 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
@@ -34,11 +43,19 @@ public class MusicFestivalCacheTest {
     @Mock
     MusicFestivalRESTApiClient mockApiClient;
 
+    @Mock
+    FestivalDataChangeFeed mockChangeFeed;
+
+    @Mock
+    PipelinedRefreshExecutor mockRefreshExecutor;
+
     @InjectMocks
     MusicFestivalCache cache = MusicFestivalCache.getInstance();
 
     @Before
-    public void setUp() {
+    public void setUp() throws Exception {
+        // Start every test with an empty cache
+        cache = Whitebox.invokeConstructor(MusicFestivalCache.class);
         MockitoAnnotations.initMocks(this);
     }
 
@@ -79,6 +96,152 @@ public class MusicFestivalCacheTest {
         assertThat(bandToVerify.getFestivals().keySet(), Matchers.contains("LOL-palooza"));
     }
 
+    @Test
+    public void testGetFestivalStatistics() throws ResponseParsingException, IOException {
+        when(mockApiClient.getFestivals()).thenReturn(getDummyFestivalsList());
+
+        FestivalStatistics statistics = cache.getFestivalStatistics();
+
+        // Statistics are computed with the cache, without a second API call
+        cache.getAllMusicFestivals();
+        verify(mockApiClient, times(1)).getFestivals();
+
+        assertNotNull(statistics);
+
+        // Verify bands per record label
+        assertEquals(getExpectedRecordLabels().length, statistics.getBandCountByRecordLabel().size());
+        assertEquals(Integer.valueOf(3), statistics.getBandCountByRecordLabel().get("Marner Sis. Recording"));
+        assertEquals(Integer.valueOf(2), statistics.getBandCountByRecordLabel().get(""));
+
+        // Verify festivals per band, festivals without a name are not counted.
+        // Bands are counted by name, Wild Antelope played one festival for each of its two record labels.
+        assertEquals(Integer.valueOf(1), statistics.getBandCountByRecordLabel().get("Still Bottom Records"));
+        assertEquals(Integer.valueOf(2), statistics.getFestivalCountByBand().get("Wild Antelope"));
+        assertEquals(Integer.valueOf(1), statistics.getFestivalCountByBand().get("Jill Black"));
+        assertEquals(Integer.valueOf(0), statistics.getFestivalCountByBand().get("Critter Girls"));
+
+        // Verify most booked bands are ordered by festival count, then by name
+        assertThat(statistics.getMostBookedBands().subList(0, 4), Matchers.contains("Squint-281", "Wild Antelope", "Adrian Venti", "Auditones"));
+        assertEquals(16, statistics.getMostBookedBands().size());
+        assertThat(statistics.getMostBookedBands().subList(14, 16), Matchers.contains("Critter Girls", "Propeller"));
+
+        // Every record label in the dummy data has a band that played a named festival
+        assertTrue(statistics.getRecordLabelsWithoutFestivals().isEmpty());
+    }
+
+    @Test
+    public void testRefreshPublishesChanges() throws ResponseParsingException, IOException {
+        List<Festival> festivals = getDummyFestivalsList();
+        when(mockApiClient.getFestivals()).thenReturn(festivals);
+
+        // First population adds the whole catalogue
+        cache.getAllMusicFestivals();
+        ArgumentCaptor<FestivalDataChangeEvent> captor = ArgumentCaptor.forClass(FestivalDataChangeEvent.class);
+        verify(mockChangeFeed, times(1)).publish(captor.capture());
+        assertEquals(1, cache.getSnapshotVersion());
+        assertEquals(1, captor.getValue().getVersion());
+        assertThat(captor.getValue().getAddedRecordLabels(), Matchers.contains(getExpectedRecordLabels()));
+        assertEquals(16 + 2, captor.getValue().getAddedBands().size());
+
+        // A refresh with identical data does not produce a new version
+        expireCache();
+        cache.getAllMusicFestivals();
+        verify(mockChangeFeed, times(1)).publish(any(FestivalDataChangeEvent.class));
+        assertEquals(1, cache.getSnapshotVersion());
+
+        // Drop the "Trainerella" festival and refresh
+        List<Festival> changedFestivals = getDummyFestivalsList();
+        changedFestivals.remove(2);
+        when(mockApiClient.getFestivals()).thenReturn(changedFestivals);
+        expireCache();
+        List<RecordLabel> recordLabels = cache.getAllMusicFestivals();
+
+        verify(mockChangeFeed, times(2)).publish(captor.capture());
+        FestivalDataChangeEvent changeEvent = captor.getValue();
+        assertEquals(2, changeEvent.getVersion());
+        assertEquals(2, cache.getSnapshotVersion());
+        assertTrue(changeEvent.getAddedRecordLabels().isEmpty());
+        assertThat(changeEvent.getRemovedRecordLabels(), Matchers.contains("Anti Records", "Monocracy Records", "Still Bottom Records"));
+        assertThat(changeEvent.getRemovedBands(), Matchers.hasItem(new CatalogueEntry("ACR", "Manish Ditch", null)));
+        assertThat(changeEvent.getRemovedFestivals(), Matchers.hasItem(new CatalogueEntry("ACR", "Manish Ditch", "Trainerella")));
+        assertTrue(changeEvent.getAddedFestivals().isEmpty());
+
+        // Removed record labels are no longer cached
+        assertEquals(getExpectedRecordLabels().length - 3, recordLabels.size());
+    }
+
+    @Test
+    public void testGetAllMusicFestivalsWithLocaleCollation() throws ResponseParsingException, IOException {
+        when(mockApiClient.getFestivals()).thenReturn(getDummyFestivalsList());
+        ReflectionTestUtils.setField(cache, "collationMode", CollationMode.LOCALE);
+
+        List<RecordLabel> recordLabels = cache.getAllMusicFestivals();
+
+        // Case no longer decides the order, "Marner Sis. Recording" sorts before "MEDIOCRE Music"
+        List<String> recordLabelNames = recordLabels.stream().map(recordLabel -> recordLabel.getName()).collect(Collectors.toList());
+        assertThat(recordLabelNames, Matchers.contains("", "ACR", "Anti Records", "Fourth Woman Records", "Marner Sis. Recording", "MEDIOCRE Music",
+                "Monocracy Records", "Outerscope", "Pacific Records", "Still Bottom Records", "XS Recordings"));
+        assertThat(recordLabels.get(1).getBands().keySet(), Matchers.contains("Critter Girls", "Manish Ditch"));
+    }
+
+    @Test
+    public void testGetAllMusicFestivalsWithPipelinedRefresh() throws ResponseParsingException, IOException {
+        List<Festival> festivals = getDummyFestivalsList();
+        doAnswer(invocation -> {
+            Consumer<Festival> restructureStage = invocation.getArgument(0);
+            festivals.forEach(restructureStage);
+            return null;
+        }).when(mockRefreshExecutor).fetchAndRestructure(any());
+        ReflectionTestUtils.setField(cache, "pipelinedRefresh", true);
+
+        List<RecordLabel> recordLabels = cache.getAllMusicFestivals();
+
+        // Festivals come from the pipeline instead of the list returned by the api client
+        verify(mockApiClient, never()).getFestivals();
+        List<String> recordLabelNames = recordLabels.stream().map(recordLabel -> recordLabel.getName()).collect(Collectors.toList());
+        assertThat(recordLabelNames, Matchers.contains(getExpectedRecordLabels()));
+        assertThat(recordLabels.get(3).getBands().keySet(), Matchers.contains("Jill Black", "The Black Dashes"));
+        assertEquals(Integer.valueOf(2), cache.getFestivalStatistics().getFestivalCountByBand().get("Wild Antelope"));
+    }
+
+    @Test
+    public void testGetAllMusicFestivalsWithOffHeapStore() throws Exception {
+        when(mockApiClient.getFestivals()).thenReturn(getDummyFestivalsList());
+        List<RecordLabel> heapRecordLabels = cache.getAllMusicFestivals();
+
+        // Same data read from an off-heap snapshot
+        MusicFestivalCache offHeapCache = Whitebox.invokeConstructor(MusicFestivalCache.class);
+        ReflectionTestUtils.setField(offHeapCache, "apiClient", mockApiClient);
+        ReflectionTestUtils.setField(offHeapCache, "changeFeed", mockChangeFeed);
+        ReflectionTestUtils.setField(offHeapCache, "snapshotStore", SnapshotStore.OFF_HEAP);
+        List<RecordLabel> offHeapRecordLabels = offHeapCache.getAllMusicFestivals();
+
+        assertEquals(heapRecordLabels.size(), offHeapRecordLabels.size());
+        for(int i = 0; i < heapRecordLabels.size(); i++) {
+            RecordLabel heapRecordLabel = heapRecordLabels.get(i);
+            RecordLabel offHeapRecordLabel = offHeapRecordLabels.get(i);
+            assertEquals(heapRecordLabel.getName(), offHeapRecordLabel.getName());
+            assertThat(offHeapRecordLabel.getBands().keySet(), Matchers.contains(heapRecordLabel.getBands().keySet().toArray()));
+            heapRecordLabel.getBands().forEach((bandName, band) -> assertThat(offHeapRecordLabel.getBands().get(bandName).getFestivals().keySet(),
+                    Matchers.contains(band.getFestivals().keySet().toArray())));
+        }
+
+        // A refresh with unchanged data compares equal to the cached off-heap record labels
+        reset(mockChangeFeed);
+        expireCache(offHeapCache);
+        offHeapCache.getAllMusicFestivals();
+        verify(mockChangeFeed, never()).publish(any(FestivalDataChangeEvent.class));
+        assertEquals(1, offHeapCache.getSnapshotVersion());
+    }
+
+    private void expireCache() {
+        expireCache(cache);
+    }
+
+    private void expireCache(MusicFestivalCache cache) {
+        ReflectionTestUtils.setField(cache, "cachePopulationTimestamp", System.currentTimeMillis() - TimeUnit.HOURS.toMillis(25));
+    }
+
     private List<Festival> getDummyFestivalsList() throws IOException {
         String festivalsString = "[{\"name\":\"LOL-palooza\",\"bands\":[{\"name\":\"Werewolf Weekday\",\"recordLabel\":\"XS Recordings\"},{\"name\":\"Jill Black\",\"recordLabel\":\"Fourth Woman Records\"},{\"name\":\"Frank Jupiter\",\"recordLabel\":\"Pacific Records\"},{\"name\":\"Winter Primates\",\"recordLabel\":\"\"}]},{\"name\":\"Small Night In\",\"bands\":[{\"name\":\"Wild Antelope\",\"recordLabel\":\"Marner Sis. Recording\"},{\"name\":\"Squint-281\",\"recordLabel\":\"Outerscope\"},{\"name\":\"Green Mild Cold Capsicum\",\"recordLabel\":\"Marner Sis. Recording\"},{\"name\":\"Yanke East\",\"recordLabel\":\"MEDIOCRE Music\"},{\"name\":\"The Black Dashes\",\"recordLabel\":\"Fourth Woman Records\"}]},{\"name\":\"Trainerella\",\"bands\":[{\"name\":\"Wild Antelope\",\"recordLabel\":\"Still Bottom Records\"},{\"name\":\"YOUKRANE\",\"recordLabel\":\"Anti Records\"},{\"name\":\"Adrian Venti\",\"recordLabel\":\"Monocracy Records\"},{\"name\":\"Manish Ditch\",\"recordLabel\":\"ACR\"}]},{\"name\":\"Twisted Tour\",\"bands\":[{\"name\":\"Auditones\",\"recordLabel\":\"Marner Sis. Recording\"},{\"name\":\"Squint-281\"},{\"name\":\"Summon\",\"recordLabel\":\"Outerscope\"}]},{\"bands\":[{\"name\":\"Critter Girls\",\"recordLabel\":\"ACR\"},{\"name\":\"Propeller\",\"recordLabel\":\"Pacific Records\"}]}]";;
         ObjectMapper objectMapper = new ObjectMapper();
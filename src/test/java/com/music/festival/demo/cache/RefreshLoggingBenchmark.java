@@ -0,0 +1,189 @@
+package com.music.festival.demo.cache;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+import com.music.festival.demo.feed.FestivalDataChangeFeed;
+import com.music.festival.demo.model.RecordLabel;
+import com.music.festival.demo.rest.client.MusicFestivalRESTApiClient;
+import com.music.festival.demo.rest.client.exception.ResponseParsingException;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.*;
+import org.powermock.reflect.Whitebox;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a full cache refresh against a local stub API under different logging setups:
+ * LEGACY is the former configuration, a synchronous file appender with the REST client logging at TRACE,
+ * plus the log calls the former code made on every refresh, which the current code no longer makes,
+ * ASYNC the current one, an asynchronous appender with the REST client logging at INFO,
+ * and ASYNC_DEBUG the current one with the REST client and the cache logging at DEBUG.
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Dbenchmark=RefreshLoggingBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RefreshLoggingBenchmark {
+
+    private static final int FESTIVAL_COUNT = 2000;
+    private static final int BANDS_PER_FESTIVAL = 25;
+
+    @Param({"LEGACY", "ASYNC", "ASYNC_DEBUG"})
+    private String logging;
+
+    private HttpServer server;
+    private MusicFestivalCache cache;
+    private Path logFile;
+
+    /**
+     * Response as the former client held it, and the names its cache logged, for the LEGACY log calls
+     */
+    private String payloadString;
+    private final List<String[]> bandAppearances = new ArrayList<>();
+    private final Set<String> recordLabelNames = new LinkedHashSet<>();
+    private final Set<List<String>> recordLabelBands = new LinkedHashSet<>();
+
+    @Setup
+    public void setUp() throws Exception {
+        payloadString = getPayload();
+        byte[] payload = payloadString.getBytes(StandardCharsets.UTF_8);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/api/v1/festivals", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, payload.length);
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                responseBody.write(payload);
+            }
+        });
+        server.start();
+
+        MusicFestivalRESTApiClient apiClient = new MusicFestivalRESTApiClient();
+        Whitebox.setInternalState(apiClient, "REST_URI", "http://localhost:" + server.getAddress().getPort() + "/api/v1/");
+        cache = Whitebox.invokeConstructor(MusicFestivalCache.class);
+        Whitebox.setInternalState(cache, "apiClient", apiClient);
+        Whitebox.setInternalState(cache, "changeFeed", new FestivalDataChangeFeed());
+
+        logFile = Files.createTempFile("refresh-logging-benchmark", ".log");
+        configureLogging();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        ((LoggerContext) LoggerFactory.getILoggerFactory()).stop();
+        server.stop(0);
+        Files.delete(logFile);
+    }
+
+    @Benchmark
+    public List<RecordLabel> refresh() throws ResponseParsingException {
+        // Mark the cache stale, so that every call refreshes it
+        Whitebox.setInternalState(cache, "cachePopulationTimestamp", 0L);
+        List<RecordLabel> recordLabels = cache.getAllMusicFestivals();
+        if("LEGACY".equals(logging)) {
+            logLegacyCalls();
+        }
+        return recordLabels;
+    }
+
+    /**
+     * Log calls of the former client and cache on every refresh. The whole response was concatenated into a
+     * DEBUG message, written by the client logger at TRACE, and the cache concatenated a DEBUG message for every
+     * band appearance, new band and new record label, even though the cache logged at INFO.
+     */
+    private void logLegacyCalls() {
+        org.slf4j.Logger clientLogger = LoggerFactory.getLogger(MusicFestivalRESTApiClient.class);
+        org.slf4j.Logger cacheLogger = LoggerFactory.getLogger(MusicFestivalCache.class);
+        clientLogger.debug("Response from the API : " + payloadString);
+        for(String recordLabelName : recordLabelNames) {
+            cacheLogger.debug("Creating a new record label entry in map for " + recordLabelName);
+        }
+        for(List<String> recordLabelBand : recordLabelBands) {
+            cacheLogger.debug("Added band " + recordLabelBand.get(1) + " to record label " + recordLabelBand.get(0));
+        }
+        for(String[] bandAppearance : bandAppearances) {
+            cacheLogger.debug("Added festival " + bandAppearance[0] + " to the band " + bandAppearance[1] + " for record label " + bandAppearance[2]);
+        }
+    }
+
+    /**
+     * Replaces the logback configuration with a file appender and the logger levels of the chosen setup.
+     */
+    private void configureLogging() {
+        LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+        loggerContext.reset();
+
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(loggerContext);
+        encoder.setPattern("%d %p %c{1.} [%t] %m%n");
+        encoder.start();
+
+        FileAppender<ILoggingEvent> fileAppender = new FileAppender<>();
+        fileAppender.setContext(loggerContext);
+        fileAppender.setFile(logFile.toString());
+        fileAppender.setEncoder(encoder);
+        fileAppender.start();
+
+        Appender<ILoggingEvent> appender = fileAppender;
+        if(!"LEGACY".equals(logging)) {
+            // Same queue and drop policy as logback-spring.xml
+            AsyncAppender asyncAppender = new AsyncAppender();
+            asyncAppender.setContext(loggerContext);
+            asyncAppender.setQueueSize(1024);
+            asyncAppender.setDiscardingThreshold(256);
+            asyncAppender.setNeverBlock(true);
+            asyncAppender.addAppender(fileAppender);
+            asyncAppender.start();
+            appender = asyncAppender;
+        }
+
+        ch.qos.logback.classic.Logger rootLogger = loggerContext.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME);
+        rootLogger.setLevel(Level.INFO);
+        rootLogger.addAppender(appender);
+        if("LEGACY".equals(logging)) {
+            loggerContext.getLogger("com.music.festival.demo.rest.client").setLevel(Level.TRACE);
+        } else if("ASYNC_DEBUG".equals(logging)) {
+            loggerContext.getLogger("com.music.festival.demo.rest.client").setLevel(Level.DEBUG);
+            loggerContext.getLogger("com.music.festival.demo.cache").setLevel(Level.DEBUG);
+        }
+    }
+
+    /**
+     * Response of festivals with bands spread over 100 record labels.
+     */
+    private String getPayload() {
+        StringBuilder payload = new StringBuilder("[");
+        for(int i = 0; i < FESTIVAL_COUNT; i++) {
+            payload.append(i > 0 ? "," : "").append("{\"name\":\"Festival ").append(i).append("\",\"bands\":[");
+            for(int j = 0; j < BANDS_PER_FESTIVAL; j++) {
+                int bandNumber = (i * 7 + j * 13) % 5000;
+                bandAppearances.add(new String[]{"Festival " + i, "Band " + bandNumber, "Record Label " + (bandNumber % 100)});
+                recordLabelNames.add("Record Label " + (bandNumber % 100));
+                recordLabelBands.add(Arrays.asList("Record Label " + (bandNumber % 100), "Band " + bandNumber));
+                payload.append(j > 0 ? "," : "").append("{\"name\":\"Band ").append(bandNumber)
+                        .append("\",\"recordLabel\":\"Record Label ").append(bandNumber % 100).append("\"}");
+            }
+            payload.append("]}");
+        }
+        return payload.append("]").toString();
+    }
+}
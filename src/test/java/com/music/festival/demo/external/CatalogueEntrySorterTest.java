@@ -0,0 +1,109 @@
+package com.music.festival.demo.external;
+
+import com.music.festival.demo.cache.CollationMode;
+import com.music.festival.demo.model.CatalogueEntry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class CatalogueEntrySorterTest {
+
+    private Path spillDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        spillDirectory = Files.createTempDirectory("catalogue-entry-sorter-test");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(spillDirectory);
+    }
+
+    @Test
+    public void testSortInMemory() throws IOException {
+        List<CatalogueEntry> entries = getEntries();
+        List<CatalogueEntry> sortedEntries = new ArrayList<>();
+
+        try (CatalogueEntrySorter sorter = new CatalogueEntrySorter(CollationMode.NATURAL, Locale.ENGLISH, Long.MAX_VALUE, spillDirectory, 2)) {
+            for(CatalogueEntry entry : entries) {
+                sorter.add(entry);
+            }
+            assertEquals(0, sorter.getRunCount());
+            sorter.merge(sortedEntries::add);
+        }
+
+        assertEquals(getExpectedEntries(entries, Comparator.naturalOrder()), sortedEntries);
+    }
+
+    @Test
+    public void testSortWithSpilledRuns() throws IOException {
+        List<CatalogueEntry> entries = getEntries();
+        List<CatalogueEntry> sortedEntries = new ArrayList<>();
+
+        // Budget of one byte spills every entry to its own run, fan-in of 3 forces intermediate merge passes
+        try (CatalogueEntrySorter sorter = new CatalogueEntrySorter(CollationMode.NATURAL, Locale.ENGLISH, 1, spillDirectory, 3)) {
+            for(CatalogueEntry entry : entries) {
+                sorter.add(entry);
+            }
+            assertEquals(entries.size(), sorter.getRunCount());
+            sorter.merge(sortedEntries::add);
+        }
+
+        assertEquals(getExpectedEntries(entries, Comparator.naturalOrder()), sortedEntries);
+
+        // Run files are deleted once the sorter is closed
+        try (Stream<Path> runs = Files.list(spillDirectory)) {
+            assertEquals(0, runs.count());
+        }
+    }
+
+    @Test
+    public void testSortWithLocaleCollation() throws IOException {
+        List<CatalogueEntry> entries = getEntries();
+        List<CatalogueEntry> sortedEntries = new ArrayList<>();
+
+        try (CatalogueEntrySorter sorter = new CatalogueEntrySorter(CollationMode.LOCALE, Locale.ENGLISH, 200, spillDirectory, 2)) {
+            for(CatalogueEntry entry : entries) {
+                sorter.add(entry);
+            }
+            assertTrue(sorter.getRunCount() > 1);
+            sorter.merge(sortedEntries::add);
+        }
+
+        List<String> recordLabelNames = sortedEntries.stream().map(CatalogueEntry::getRecordLabel).distinct().collect(Collectors.toList());
+        assertEquals(Arrays.asList("", "ACR", "Marner Sis. Recording", "MEDIOCRE Music"), recordLabelNames);
+        assertEquals(new HashSet<>(entries).size(), sortedEntries.size());
+    }
+
+    private List<CatalogueEntry> getEntries() {
+        return Arrays.asList(
+                new CatalogueEntry("MEDIOCRE Music", "Yanke East", "Small Night In"),
+                new CatalogueEntry("Marner Sis. Recording", "Wild Antelope", "Small Night In"),
+                new CatalogueEntry("ACR", "Manish Ditch", "Trainerella"),
+                new CatalogueEntry("Marner Sis. Recording", "Auditones", "Twisted Tour"),
+                new CatalogueEntry("ACR", "Critter Girls", ""),
+                new CatalogueEntry("", "Squint-281", "Twisted Tour"),
+                new CatalogueEntry("Marner Sis. Recording", "Wild Antelope", "Small Night In"),
+                new CatalogueEntry("Marner Sis. Recording", "Green Mild Cold Capsicum", "Small Night In"),
+                new CatalogueEntry("", "Winter Primates", "LOL-palooza"));
+    }
+
+    private List<CatalogueEntry> getExpectedEntries(List<CatalogueEntry> entries, Comparator<String> nameComparator) {
+        return entries.stream()
+                .distinct()
+                .sorted(Comparator.comparing(CatalogueEntry::getRecordLabel, nameComparator)
+                        .thenComparing(CatalogueEntry::getBand, nameComparator)
+                        .thenComparing(CatalogueEntry::getFestival, nameComparator))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,139 @@
+package com.music.festival.demo.feed;
+
+import com.music.festival.demo.model.FestivalDataChangeEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FestivalDataChangeFeedTest {
+
+    FestivalDataChangeFeed changeFeed;
+
+    @Before
+    public void setUp() {
+        changeFeed = new FestivalDataChangeFeed();
+        ReflectionTestUtils.setField(changeFeed, "historySize", 3);
+        ReflectionTestUtils.setField(changeFeed, "listenerQueueSize", 2);
+    }
+
+    @After
+    public void tearDown() {
+        changeFeed.shutdown();
+    }
+
+    @Test
+    public void testPublishNotifiesListeners() throws InterruptedException {
+        BlockingQueue<Long> receivedVersions = new LinkedBlockingQueue<>();
+        FestivalDataChangeListener listener = changeEvent -> receivedVersions.add(changeEvent.getVersion());
+        changeFeed.addListener(listener);
+
+        changeFeed.publish(getChangeEvent(1));
+        changeFeed.publish(getChangeEvent(2));
+        assertEquals(Long.valueOf(1), receivedVersions.poll(5, TimeUnit.SECONDS));
+        assertEquals(Long.valueOf(2), receivedVersions.poll(5, TimeUnit.SECONDS));
+        changeFeed.removeListener(listener);
+        changeFeed.publish(getChangeEvent(3));
+
+        assertEquals(3, changeFeed.getLatestVersion());
+        assertEquals(0, changeFeed.getListenerCount());
+        assertNull(receivedVersions.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testResumeFromVersion() throws InterruptedException {
+        for(long version = 1; version <= 5; version++) {
+            changeFeed.publish(getChangeEvent(version));
+        }
+
+        // History keeps versions 3 to 5, so a listener that has seen version 2 can resume
+        BlockingQueue<Long> receivedVersions = new LinkedBlockingQueue<>();
+        assertTrue(changeFeed.addListener(changeEvent -> receivedVersions.add(changeEvent.getVersion()), 2));
+        changeFeed.publish(getChangeEvent(6));
+        for(long version = 3; version <= 6; version++) {
+            assertEquals(Long.valueOf(version), receivedVersions.poll(5, TimeUnit.SECONDS));
+        }
+
+        // Versions 1 to 3 are no longer retained
+        assertFalse(changeFeed.getEventsSince(1).isPresent());
+        assertEquals(2, changeFeed.getEventsSince(4).get().size());
+        assertTrue(changeFeed.getEventsSince(6).get().isEmpty());
+
+        // Unknown future version, e.g. from before a restart
+        assertFalse(changeFeed.getEventsSince(7).isPresent());
+    }
+
+    @Test
+    public void testFailingListenerDoesNotAffectOthers() throws InterruptedException {
+        BlockingQueue<Long> receivedVersions = new LinkedBlockingQueue<>();
+        changeFeed.addListener(changeEvent -> {
+            throw new IllegalStateException("Listener failure");
+        });
+        changeFeed.addListener(changeEvent -> receivedVersions.add(changeEvent.getVersion()));
+
+        changeFeed.publish(getChangeEvent(1));
+
+        assertEquals(Long.valueOf(1), receivedVersions.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 10000)
+    public void testSlowListenerDoesNotBlockPublish() throws InterruptedException {
+        CountDownLatch slowListenerBusy = new CountDownLatch(1);
+        CountDownLatch releaseSlowListener = new CountDownLatch(1);
+        CountDownLatch slowListenerDisconnected = new CountDownLatch(1);
+        List<Long> slowListenerVersions = Collections.synchronizedList(new ArrayList<>());
+        changeFeed.addListener(new FestivalDataChangeListener() {
+            @Override
+            public void onFestivalDataChanged(FestivalDataChangeEvent changeEvent) {
+                slowListenerBusy.countDown();
+                try {
+                    releaseSlowListener.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                slowListenerVersions.add(changeEvent.getVersion());
+            }
+
+            @Override
+            public void onFeedDisconnected() {
+                slowListenerDisconnected.countDown();
+            }
+        });
+        BlockingQueue<Long> receivedVersions = new LinkedBlockingQueue<>();
+        changeFeed.addListener(changeEvent -> receivedVersions.add(changeEvent.getVersion()));
+
+        // The slow listener holds version 1, versions 2 and 3 fill its queue and version 4 overflows it.
+        // Publishing would never return if it waited for the slow listener.
+        for(long version = 1; version <= 4; version++) {
+            changeFeed.publish(getChangeEvent(version));
+            assertEquals(Long.valueOf(version), receivedVersions.poll(5, TimeUnit.SECONDS));
+            if(version == 1) {
+                // Wait until the slow listener has taken version 1 off its queue
+                assertTrue(slowListenerBusy.await(5, TimeUnit.SECONDS));
+            }
+        }
+        assertEquals(1, changeFeed.getListenerCount());
+
+        // Events queued before the overflow are still delivered, then the listener is told it was removed
+        releaseSlowListener.countDown();
+        assertTrue(slowListenerDisconnected.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(1L, 2L, 3L), slowListenerVersions);
+    }
+
+    private FestivalDataChangeEvent getChangeEvent(long version) {
+        return new FestivalDataChangeEvent(version, System.currentTimeMillis(),
+                Collections.singletonList("ACR"), Collections.emptyList(), Collections.emptyList(),
+                Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+    }
+}
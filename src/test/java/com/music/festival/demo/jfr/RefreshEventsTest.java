@@ -0,0 +1,141 @@
+package com.music.festival.demo.jfr;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.music.festival.demo.cache.MusicFestivalCache;
+import com.music.festival.demo.feed.FestivalDataChangeFeed;
+import com.music.festival.demo.rest.client.MusicFestivalRESTApiClient;
+import com.music.festival.demo.rest.client.model.Festival;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.powermock.reflect.Whitebox;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Verifies the flight recorder events committed while the cache is populated.
+ */
+public class RefreshEventsTest {
+
+    private Recording recording;
+    private Path recordingFile;
+
+    @Before
+    public void setUp() throws IOException {
+        recordingFile = Files.createTempFile("refresh-events", ".jfr");
+        recording = new Recording();
+        recording.enable(RestructureEvent.class).withThreshold(java.time.Duration.ZERO);
+        recording.enable(SnapshotSwapEvent.class).withThreshold(java.time.Duration.ZERO);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        recording.close();
+        Files.deleteIfExists(recordingFile);
+    }
+
+    @Test
+    public void testPopulateCacheCommitsEvents() throws Exception {
+        MusicFestivalRESTApiClient mockApiClient = Mockito.mock(MusicFestivalRESTApiClient.class);
+        Mockito.when(mockApiClient.getFestivals()).thenReturn(getDummyFestivalsList());
+        MusicFestivalCache cache = Whitebox.invokeConstructor(MusicFestivalCache.class);
+        ReflectionTestUtils.setField(cache, "apiClient", mockApiClient);
+        ReflectionTestUtils.setField(cache, "changeFeed", Mockito.mock(FestivalDataChangeFeed.class));
+
+        recording.start();
+        cache.getAllMusicFestivals();
+        recording.stop();
+        recording.dump(recordingFile);
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile);
+
+        RecordedEvent restructureEvent = getSingleEvent(events, "com.music.festival.demo.Restructure");
+        assertFalse(restructureEvent.getBoolean("outOfCore"));
+        assertFalse(restructureEvent.getBoolean("fetchOverlapped"));
+        assertTrue(restructureEvent.getLong("restructureTime") > 0);
+        assertEquals(5, restructureEvent.getInt("festivalCount"));
+        assertEquals(11, restructureEvent.getInt("recordLabelCount"));
+        // Wild Antelope and Squint-281 are each signed to two record labels
+        assertEquals(18, restructureEvent.getInt("bandCount"));
+        assertEquals(18, restructureEvent.getLong("entryCount"));
+
+        RecordedEvent swapEvent = getSingleEvent(events, "com.music.festival.demo.SnapshotSwap");
+        assertEquals(1, swapEvent.getLong("version"));
+        assertTrue(swapEvent.getBoolean("changed"));
+        assertEquals(11, swapEvent.getInt("recordLabelCount"));
+    }
+
+    @Test
+    public void testRestructureEventExcludesFetch() throws Exception {
+        MusicFestivalRESTApiClient mockApiClient = Mockito.mock(MusicFestivalRESTApiClient.class);
+        List<Festival> festivals = getDummyFestivalsList();
+        MusicFestivalCache cache = Whitebox.invokeConstructor(MusicFestivalCache.class);
+        ReflectionTestUtils.setField(cache, "apiClient", mockApiClient);
+        ReflectionTestUtils.setField(cache, "changeFeed", Mockito.mock(FestivalDataChangeFeed.class));
+
+        // Slow API call
+        Mockito.when(mockApiClient.getFestivals()).thenAnswer(invocation -> {
+            Thread.sleep(500);
+            return festivals;
+        });
+
+        recording.start();
+        cache.getAllMusicFestivals();
+        recording.stop();
+        recording.dump(recordingFile);
+
+        RecordedEvent restructureEvent = getSingleEvent(RecordingFile.readAllEvents(recordingFile), "com.music.festival.demo.Restructure");
+        assertTrue(restructureEvent.getDuration().toMillis() < 500);
+    }
+
+    @Test
+    public void testSwapEventExcludesChangeListeners() throws Exception {
+        MusicFestivalRESTApiClient mockApiClient = Mockito.mock(MusicFestivalRESTApiClient.class);
+        Mockito.when(mockApiClient.getFestivals()).thenReturn(getDummyFestivalsList());
+        FestivalDataChangeFeed mockChangeFeed = Mockito.mock(FestivalDataChangeFeed.class);
+        MusicFestivalCache cache = Whitebox.invokeConstructor(MusicFestivalCache.class);
+        ReflectionTestUtils.setField(cache, "apiClient", mockApiClient);
+        ReflectionTestUtils.setField(cache, "changeFeed", mockChangeFeed);
+
+        // Slow listener delivery
+        Mockito.doAnswer(invocation -> {
+            Thread.sleep(500);
+            return null;
+        }).when(mockChangeFeed).publish(Mockito.any());
+
+        recording.start();
+        cache.getAllMusicFestivals();
+        recording.stop();
+        recording.dump(recordingFile);
+
+        RecordedEvent swapEvent = getSingleEvent(RecordingFile.readAllEvents(recordingFile), "com.music.festival.demo.SnapshotSwap");
+        Mockito.verify(mockChangeFeed).publish(Mockito.any());
+        assertTrue(swapEvent.getDuration().toMillis() < 500);
+    }
+
+    private RecordedEvent getSingleEvent(List<RecordedEvent> events, String eventName) {
+        List<RecordedEvent> matchingEvents = events.stream()
+                .filter(event -> event.getEventType().getName().equals(eventName))
+                .collect(Collectors.toList());
+        assertEquals(1, matchingEvents.size());
+        return matchingEvents.get(0);
+    }
+
+    private List<Festival> getDummyFestivalsList() throws IOException {
+        String festivalsString = "[{\"name\":\"LOL-palooza\",\"bands\":[{\"name\":\"Werewolf Weekday\",\"recordLabel\":\"XS Recordings\"},{\"name\":\"Jill Black\",\"recordLabel\":\"Fourth Woman Records\"},{\"name\":\"Frank Jupiter\",\"recordLabel\":\"Pacific Records\"},{\"name\":\"Winter Primates\",\"recordLabel\":\"\"}]},{\"name\":\"Small Night In\",\"bands\":[{\"name\":\"Wild Antelope\",\"recordLabel\":\"Marner Sis. Recording\"},{\"name\":\"Squint-281\",\"recordLabel\":\"Outerscope\"},{\"name\":\"Green Mild Cold Capsicum\",\"recordLabel\":\"Marner Sis. Recording\"},{\"name\":\"Yanke East\",\"recordLabel\":\"MEDIOCRE Music\"},{\"name\":\"The Black Dashes\",\"recordLabel\":\"Fourth Woman Records\"}]},{\"name\":\"Trainerella\",\"bands\":[{\"name\":\"Wild Antelope\",\"recordLabel\":\"Still Bottom Records\"},{\"name\":\"YOUKRANE\",\"recordLabel\":\"Anti Records\"},{\"name\":\"Adrian Venti\",\"recordLabel\":\"Monocracy Records\"},{\"name\":\"Manish Ditch\",\"recordLabel\":\"ACR\"}]},{\"name\":\"Twisted Tour\",\"bands\":[{\"name\":\"Auditones\",\"recordLabel\":\"Marner Sis. Recording\"},{\"name\":\"Squint-281\"},{\"name\":\"Summon\",\"recordLabel\":\"Outerscope\"}]},{\"bands\":[{\"name\":\"Critter Girls\",\"recordLabel\":\"ACR\"},{\"name\":\"Propeller\",\"recordLabel\":\"Pacific Records\"}]}]";
+        ObjectMapper objectMapper = new ObjectMapper();
+        return objectMapper.readValue(festivalsString, new TypeReference<List<Festival>>(){});
+    }
+}
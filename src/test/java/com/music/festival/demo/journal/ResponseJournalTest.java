@@ -0,0 +1,170 @@
+package com.music.festival.demo.journal;
+
+import com.google.common.io.ByteStreams;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.*;
+
+public class ResponseJournalTest {
+
+    private Path journalDirectory;
+    private ResponseJournal journal;
+
+    @Before
+    public void setUp() throws IOException {
+        journalDirectory = Files.createTempDirectory("response-journal-test");
+        journal = new ResponseJournal();
+        Whitebox.setInternalState(journal, "directory", journalDirectory.toString());
+        Whitebox.setInternalState(journal, "enabled", true);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for(Path segment : getSegments()) {
+            Files.delete(segment);
+        }
+        Files.delete(journalDirectory);
+    }
+
+    @Test
+    public void testReadLatest() throws IOException {
+        assertFalse(journal.readLatest().isPresent());
+
+        journal.append(getPayload(1));
+        journal.append(getPayload(2));
+
+        assertEquals(getPayloadString(2), new String(journal.readLatest().get(), StandardCharsets.UTF_8));
+        assertEquals(1, getSegments().size());
+
+        // Payloads are stored compressed
+        assertTrue(Files.size(getSegments().get(0)) < 2 * getPayload(1).length);
+    }
+
+    @Test
+    public void testRotation() throws IOException {
+        // Every record starts a new segment, only the newest 2 segments are kept
+        Whitebox.setInternalState(journal, "maxSegmentBytes", 1L);
+        Whitebox.setInternalState(journal, "maxSegments", 2);
+
+        for(int i = 0; i < 5; i++) {
+            journal.append(getPayload(i));
+        }
+
+        List<Path> segments = getSegments();
+        assertEquals(2, segments.size());
+        assertTrue(segments.get(1).getFileName().toString().endsWith("0000000004.journal"));
+        assertEquals(getPayloadString(4), new String(journal.readLatest().get(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testCorruptedRecordIsSkipped() throws IOException {
+        journal.append(getPayload(1));
+        journal.append(getPayload(2));
+
+        // Flip a byte in the compressed payload of the newest record
+        Path segment = getSegments().get(0);
+        byte[] segmentBytes = Files.readAllBytes(segment);
+        segmentBytes[segmentBytes.length - 10] ^= 0x55;
+        Files.write(segment, segmentBytes);
+
+        assertEquals(getPayloadString(1), new String(journal.readLatest().get(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testIncompleteRecordIsTruncated() throws IOException {
+        journal.append(getPayload(1));
+        journal.append(getPayload(2));
+
+        // Cut the newest record short, as a crash while appending would
+        Path segment = getSegments().get(0);
+        try (FileChannel segmentChannel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            segmentChannel.truncate(segmentChannel.size() - 5);
+        }
+        assertEquals(getPayloadString(1), new String(journal.readLatest().get(), StandardCharsets.UTF_8));
+
+        // Records appended afterwards are found again
+        journal.append(getPayload(3));
+        assertEquals(getPayloadString(3), new String(journal.readLatest().get(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testRecordingStream() throws IOException {
+        ResponseJournal.RecordingInputStream recordingStream = journal.recording(new ByteArrayInputStream(getPayload(1)));
+        try (InputStream stream = recordingStream) {
+            assertArrayEquals(getPayload(1), ByteStreams.toByteArray(stream));
+        }
+        recordingStream.commit();
+
+        assertEquals(getPayloadString(1), new String(journal.readLatest().get(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testRecordingStreamReadsTrailingBytes() throws IOException {
+        byte[] payload = (getPayloadString(1) + "\n").getBytes(StandardCharsets.UTF_8);
+
+        // Reader stops before the trailing line separator
+        ResponseJournal.RecordingInputStream recordingStream = journal.recording(new ByteArrayInputStream(payload));
+        ByteStreams.readFully(recordingStream, new byte[payload.length - 1]);
+        recordingStream.commit();
+
+        assertArrayEquals(payload, journal.readLatest().get());
+    }
+
+    @Test
+    public void testPartlyReadStreamIsNotJournaled() throws IOException {
+        byte[] payload = new byte[1024 * 1024];
+
+        ResponseJournal.RecordingInputStream recordingStream = journal.recording(new ByteArrayInputStream(payload));
+        ByteStreams.readFully(recordingStream, new byte[1024]);
+        recordingStream.commit();
+
+        Optional<byte[]> latestPayload = journal.readLatest();
+        assertFalse(latestPayload.isPresent());
+    }
+
+    @Test
+    public void testUncommittedStreamIsNotJournaled() throws IOException {
+        journal.append(getPayload(1));
+
+        // Read to the end and closed, but not committed as its parsing failed
+        try (InputStream recordingStream = journal.recording(new ByteArrayInputStream(getPayload(2)))) {
+            ByteStreams.exhaust(recordingStream);
+        }
+
+        assertEquals(getPayloadString(1), new String(journal.readLatest().get(), StandardCharsets.UTF_8));
+    }
+
+    private List<Path> getSegments() throws IOException {
+        try (Stream<Path> files = Files.list(journalDirectory)) {
+            return files.sorted().collect(toList());
+        }
+    }
+
+    private byte[] getPayload(int number) {
+        return getPayloadString(number).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String getPayloadString(int number) {
+        StringBuilder payload = new StringBuilder("[");
+        for(int i = 0; i < 100; i++) {
+            payload.append(i > 0 ? "," : "").append("{\"name\":\"Festival ").append(number).append("-").append(i).append("\"}");
+        }
+        return payload.append("]").toString();
+    }
+}
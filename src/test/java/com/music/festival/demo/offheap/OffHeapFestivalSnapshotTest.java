@@ -0,0 +1,113 @@
+package com.music.festival.demo.offheap;
+
+import com.music.festival.demo.model.Band;
+import com.music.festival.demo.model.Festival;
+import com.music.festival.demo.model.RecordLabel;
+import org.hamcrest.Matchers;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class OffHeapFestivalSnapshotTest {
+
+    private List<RecordLabel> recordLabels;
+    private OffHeapFestivalSnapshot snapshot;
+
+    @Before
+    public void setUp() {
+        recordLabels = Arrays.asList(
+                getRecordLabel("", getBand("Winter Primates", "LOL-palooza")),
+                getRecordLabel("ACR", getBand("Critter Girls", ""), getBand("Manish Ditch", "Trainerella")),
+                getRecordLabel("Émile Records", getBand("Wild Antelope", "Small Night In", "Trainerella"), getBand("Wölf", "Twisted Tour")),
+                getRecordLabel("Outerscope", getBand("Wild Antelope", "LOL-palooza")));
+        snapshot = OffHeapFestivalSnapshot.build(recordLabels);
+    }
+
+    @Test
+    public void testGetRecordLabels() {
+        List<RecordLabel> offHeapRecordLabels = snapshot.getRecordLabels();
+
+        assertEquals(recordLabels.size(), offHeapRecordLabels.size());
+        for(int i = 0; i < recordLabels.size(); i++) {
+            assertRecordLabelEquals(recordLabels.get(i), offHeapRecordLabels.get(i));
+        }
+    }
+
+    @Test
+    public void testLookupByName() {
+        Map<String, RecordLabel> recordLabelsByName = snapshot.asMap();
+
+        assertThat(recordLabelsByName.keySet(), Matchers.contains("", "ACR", "Émile Records", "Outerscope"));
+        assertTrue(recordLabelsByName.containsKey("Émile Records"));
+        assertFalse(recordLabelsByName.containsKey("Anti Records"));
+        assertFalse(recordLabelsByName.containsKey("Wild Antelope"));
+        assertNull(recordLabelsByName.get(null));
+
+        Map<String, Band> bands = recordLabelsByName.get("Émile Records").getBands();
+        assertEquals("Wölf", bands.get("Wölf").getName());
+        assertNull(bands.get("Critter Girls"));
+        assertThat(bands.get("Wild Antelope").getFestivals().keySet(), Matchers.contains("Small Night In", "Trainerella"));
+        assertTrue(bands.get("Wild Antelope").getFestivals().containsKey("Trainerella"));
+        assertFalse(bands.get("Wild Antelope").getFestivals().containsKey("LOL-palooza"));
+    }
+
+    @Test
+    public void testNamesAreStoredOnce() {
+        // 4 record labels, 5 distinct bands and 4 distinct festivals, the empty festival shares its name with the empty record label
+        assertEquals(13, snapshot.getNameCount());
+        assertTrue(snapshot.getOffHeapBytes() > 0);
+    }
+
+    @Test
+    public void testEmptySnapshot() {
+        OffHeapFestivalSnapshot emptySnapshot = OffHeapFestivalSnapshot.build(Collections.emptyList());
+
+        assertTrue(emptySnapshot.getRecordLabels().isEmpty());
+        assertTrue(emptySnapshot.asMap().isEmpty());
+        assertFalse(emptySnapshot.asMap().containsKey("ACR"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSnapshotIsReadOnly() {
+        snapshot.getRecordLabels().get(1).getBands().get("Manish Ditch").setFestivals(new HashMap<>());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetRecordLabelOutOfBounds() {
+        snapshot.getRecordLabels().get(recordLabels.size());
+    }
+
+    private void assertRecordLabelEquals(RecordLabel expected, RecordLabel actual) {
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(new ArrayList<>(expected.getBands().keySet()), new ArrayList<>(actual.getBands().keySet()));
+        expected.getBands().forEach((bandName, band) -> {
+            Band actualBand = actual.getBands().get(bandName);
+            assertEquals(bandName, actualBand.getName());
+            assertEquals(new ArrayList<>(band.getFestivals().keySet()), new ArrayList<>(actualBand.getFestivals().keySet()));
+            actualBand.getFestivals().forEach((festivalName, festival) -> assertEquals(festivalName, festival.getName()));
+        });
+    }
+
+    private RecordLabel getRecordLabel(String name, Band... bands) {
+        RecordLabel recordLabel = new RecordLabel(name);
+        Map<String, Band> bandsMap = new LinkedHashMap<>();
+        for(Band band : bands) {
+            bandsMap.put(band.getName(), band);
+        }
+        recordLabel.setBands(bandsMap);
+        return recordLabel;
+    }
+
+    private Band getBand(String name, String... festivalNames) {
+        Band band = new Band(name);
+        Map<String, Festival> festivals = new LinkedHashMap<>();
+        for(String festivalName : festivalNames) {
+            festivals.put(festivalName, new Festival(festivalName));
+        }
+        band.setFestivals(festivals);
+        return band;
+    }
+}
@@ -0,0 +1,84 @@
+package com.music.festival.demo.offheap;
+
+import com.music.festival.demo.model.Band;
+import com.music.festival.demo.model.Festival;
+import com.music.festival.demo.model.RecordLabel;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares full garbage collection pauses while a large catalogue is held as heap model objects
+ * and while it is held in an {@link OffHeapFestivalSnapshot}, along with the cost of reading every name back.
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Dbenchmark=SnapshotGcPauseBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g", "-XX:MaxDirectMemorySize=1g"})
+@State(Scope.Benchmark)
+public class SnapshotGcPauseBenchmark {
+
+    @Param({"HEAP", "OFF_HEAP"})
+    private String store;
+
+    @Param({"1000000"})
+    private int entryCount;
+
+    /**
+     * Catalogue kept reachable so that every collection has to trace it
+     */
+    private List<RecordLabel> recordLabels;
+
+    @Setup
+    public void setUp() {
+        List<RecordLabel> heapRecordLabels = getCatalogue(entryCount);
+        recordLabels = "HEAP".equals(store) ? heapRecordLabels : OffHeapFestivalSnapshot.build(heapRecordLabels).getRecordLabels();
+        System.gc();
+    }
+
+    @Benchmark
+    public void fullGc() {
+        System.gc();
+    }
+
+    @Benchmark
+    public void readAllNames(Blackhole blackhole) {
+        for(RecordLabel recordLabel : recordLabels) {
+            blackhole.consume(recordLabel.getName());
+            recordLabel.getBands().forEach((bandName, band) -> {
+                blackhole.consume(bandName);
+                band.getFestivals().forEach((festivalName, festival) -> blackhole.consume(festivalName));
+            });
+        }
+    }
+
+    /**
+     * Catalogue of 10 festivals per band and 20 bands per record label, with distinct names.
+     */
+    private List<RecordLabel> getCatalogue(int entryCount) {
+        List<RecordLabel> catalogue = new ArrayList<>();
+        int bandNumber = 0;
+        int entries = 0;
+        for(int recordLabelNumber = 0; entries < entryCount; recordLabelNumber++) {
+            RecordLabel recordLabel = new RecordLabel("Record Label " + recordLabelNumber);
+            Map<String, Band> bands = new LinkedHashMap<>();
+            for(int i = 0; i < 20 && entries < entryCount; i++) {
+                Band band = new Band("Band " + bandNumber++);
+                Map<String, Festival> festivals = new LinkedHashMap<>();
+                for(int j = 0; j < 10 && entries < entryCount; j++, entries++) {
+                    String festivalName = "Festival " + entries;
+                    festivals.put(festivalName, new Festival(festivalName));
+                }
+                band.setFestivals(festivals);
+                bands.put(band.getName(), band);
+            }
+            recordLabel.setBands(bands);
+            catalogue.add(recordLabel);
+        }
+        return catalogue;
+    }
+}
@@ -0,0 +1,193 @@
+package com.music.festival.demo.pipeline;
+
+import com.music.festival.demo.rest.client.MusicFestivalRESTApiClient;
+import com.music.festival.demo.rest.client.exception.ResponseParsingException;
+import com.music.festival.demo.rest.client.model.Festival;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.powermock.reflect.Whitebox;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PipelinedRefreshExecutorTest {
+
+    private static final int FESTIVAL_COUNT = 500;
+
+    @Mock
+    private MusicFestivalRESTApiClient mockApiClient;
+
+    private PipelinedRefreshExecutor refreshExecutor;
+
+    private Path outputFile;
+
+    @Before
+    public void setUp() throws Exception {
+        refreshExecutor = new PipelinedRefreshExecutor();
+        Whitebox.setInternalState(refreshExecutor, "apiClient", mockApiClient);
+
+        // Small queues so that stages block on each other
+        Whitebox.setInternalState(refreshExecutor, "chunkQueueCapacity", 1);
+        Whitebox.setInternalState(refreshExecutor, "recordQueueCapacity", 2);
+        doCallRealMethod().when(mockApiClient).parseFestivals(any(InputStream.class), any());
+        outputFile = Files.createTempFile("pipelined-refresh-executor-test", ".txt");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        refreshExecutor.shutdown();
+        Files.deleteIfExists(outputFile);
+    }
+
+    @Test
+    public void testFetchAndRestructure() throws ResponseParsingException {
+        when(mockApiClient.getFestivalsStream()).thenReturn(toStream(getResponseString(FESTIVAL_COUNT)));
+        List<String> festivalNames = new ArrayList<>();
+
+        refreshExecutor.fetchAndRestructure(festival -> festivalNames.add(festival.getName()));
+
+        // Festivals arrive in response order
+        assertEquals(FESTIVAL_COUNT, festivalNames.size());
+        for(int i = 0; i < FESTIVAL_COUNT; i++) {
+            assertEquals("Festival " + i, festivalNames.get(i));
+        }
+
+        List<StageMetrics> stageMetrics = refreshExecutor.getLastFetchAndRestructureMetrics();
+        assertEquals(Arrays.asList("fetch", "parse", "restructure"), getStageNames(stageMetrics));
+        assertEquals(getResponseString(FESTIVAL_COUNT).length(), stageMetrics.get(0).getByteCount());
+        assertEquals(FESTIVAL_COUNT, stageMetrics.get(1).getItemCount());
+        assertEquals(FESTIVAL_COUNT, stageMetrics.get(2).getItemCount());
+        assertTrue(stageMetrics.get(2).getInputQueueMaxDepth() <= 2);
+    }
+
+    @Test(timeout = 10000)
+    public void testFetchAndRestructureFetchesPastEndOfArray() throws ResponseParsingException {
+        // Parser stops at the end of the array, well before the 1 MB tail has been fetched
+        StringBuilder response = new StringBuilder(getResponseString(FESTIVAL_COUNT));
+        for(int i = 0; i < 1024 * 1024; i++) {
+            response.append(' ');
+        }
+        when(mockApiClient.getFestivalsStream()).thenReturn(toStream(response.toString()));
+        List<Festival> festivals = new ArrayList<>();
+
+        refreshExecutor.fetchAndRestructure(festivals::add);
+
+        assertEquals(FESTIVAL_COUNT, festivals.size());
+
+        // The fetch stage reads to the end of the response and it is committed to the journal, nothing was aborted
+        assertEquals(response.length(), refreshExecutor.getLastFetchAndRestructureMetrics().get(0).getByteCount());
+        verify(mockApiClient).commitResponse(any(InputStream.class));
+    }
+
+    @Test(expected = ResponseParsingException.class)
+    public void testFetchAndRestructureEmptyResponse() throws ResponseParsingException {
+        when(mockApiClient.getFestivalsStream()).thenReturn(toStream(""));
+
+        refreshExecutor.fetchAndRestructure(festival -> {});
+    }
+
+    @Test(expected = ResponseParsingException.class)
+    public void testFetchAndRestructureWithInvalidResponse() throws ResponseParsingException {
+        String invalidResponse = getResponseString(FESTIVAL_COUNT).replace("\"Festival 250\"", "Festival 250");
+        when(mockApiClient.getFestivalsStream()).thenReturn(toStream(invalidResponse));
+
+        refreshExecutor.fetchAndRestructure(festival -> {});
+    }
+
+    @Test
+    public void testFetchAndRestructureWithFailingRestructure() throws ResponseParsingException {
+        when(mockApiClient.getFestivalsStream()).thenReturn(toStream(getResponseString(FESTIVAL_COUNT)));
+
+        try {
+            refreshExecutor.fetchAndRestructure(festival -> {
+                throw new IllegalStateException("Restructure failed");
+            });
+            fail("Restructure failure was not propagated.");
+        } catch (IllegalStateException e) {
+            assertEquals("Restructure failed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testRenderAndWrite() throws IOException {
+        List<Integer> items = new ArrayList<>();
+        List<String> expectedLines = new ArrayList<>();
+        for(int i = 0; i < FESTIVAL_COUNT; i++) {
+            items.add(i);
+            expectedLines.add("Item " + i);
+            expectedLines.add("     Detail " + i);
+        }
+
+        refreshExecutor.renderAndWrite(items, item -> Arrays.asList("Item " + item, "     Detail " + item), outputFile);
+
+        assertEquals(expectedLines, Files.readAllLines(outputFile));
+        List<StageMetrics> stageMetrics = refreshExecutor.getLastRenderAndWriteMetrics();
+        assertEquals(Arrays.asList("render", "write"), getStageNames(stageMetrics));
+        assertEquals(FESTIVAL_COUNT, stageMetrics.get(0).getItemCount());
+        assertEquals(expectedLines.size(), stageMetrics.get(1).getItemCount());
+    }
+
+    @Test
+    public void testRenderAndWriteWithFailingRender() {
+        try {
+            refreshExecutor.renderAndWrite(Arrays.asList(1, 2, 3), item -> {
+                if(item == 2) {
+                    throw new IllegalStateException("Render failed");
+                }
+                return Arrays.asList("Item " + item);
+            }, outputFile);
+            fail("Render failure was not propagated.");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("Render failed"));
+        }
+    }
+
+    private List<String> getStageNames(List<StageMetrics> stageMetrics) {
+        List<String> stageNames = new ArrayList<>();
+        stageMetrics.forEach(metrics -> stageNames.add(metrics.getStageName()));
+        return stageNames;
+    }
+
+    private InputStream toStream(String response) {
+        return new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Response large enough to span several fetched chunks.
+     */
+    private String getResponseString(int festivalCount) {
+        StringBuilder response = new StringBuilder("[");
+        for(int i = 0; i < festivalCount; i++) {
+            if(i > 0) {
+                response.append(',');
+            }
+            response.append("{\"name\":\"Festival ").append(i).append("\",\"bands\":[");
+            for(int j = 0; j < 20; j++) {
+                if(j > 0) {
+                    response.append(',');
+                }
+                response.append("{\"name\":\"Band ").append(j).append("\",\"recordLabel\":\"Record Label ").append(j % 3).append("\"}");
+            }
+            response.append("]}");
+        }
+        return response.append(']').toString();
+    }
+}
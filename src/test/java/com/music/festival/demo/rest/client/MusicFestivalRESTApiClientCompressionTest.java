@@ -0,0 +1,220 @@
+package com.music.festival.demo.rest.client;
+
+import com.music.festival.demo.journal.ResponseJournal;
+import com.music.festival.demo.rest.client.exception.ResponseParsingException;
+import com.music.festival.demo.rest.client.model.Festival;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Calls a local stub of the festivals API that serves compressed responses.
+ */
+public class MusicFestivalRESTApiClientCompressionTest {
+
+    private static final int FESTIVAL_COUNT = 200;
+
+    private HttpServer server;
+    private MusicFestivalRESTApiClient apiClient;
+
+    /**
+     * Accept-Encoding header of the last request received by the stub
+     */
+    private volatile String acceptEncoding;
+
+    /**
+     * Content-Encoding and body served by the stub
+     */
+    private volatile String contentEncoding;
+    private volatile byte[] responseBody;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/api/v1/festivals", exchange -> {
+            acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            if(contentEncoding != null) {
+                exchange.getResponseHeaders().add("Content-Encoding", contentEncoding);
+            }
+            // -1 sends no body, 0 would send a chunked one
+            exchange.sendResponseHeaders(200, responseBody.length == 0 ? -1 : responseBody.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(responseBody);
+            }
+        });
+        server.start();
+
+        apiClient = new MusicFestivalRESTApiClient();
+        ReflectionTestUtils.setField(apiClient, "REST_URI", "http://localhost:" + server.getAddress().getPort() + "/api/v1/");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testGetFestivalsGzip() throws ResponseParsingException, IOException {
+        serve("gzip", gzip(getPayload()));
+
+        List<Festival> festivals = apiClient.getFestivals();
+
+        assertEquals(FESTIVAL_COUNT, festivals.size());
+        assertEquals("gzip, deflate", acceptEncoding);
+        assertTransferMetrics("gzip");
+    }
+
+    @Test
+    public void testGetFestivalsStreamingGzip() throws ResponseParsingException, IOException {
+        serve("gzip", gzip(getPayload()));
+
+        List<Festival> festivals = new ArrayList<>();
+        apiClient.getFestivals(festivals::add);
+
+        assertEquals(FESTIVAL_COUNT, festivals.size());
+        assertEquals("Festival 199", festivals.get(FESTIVAL_COUNT - 1).getName());
+        assertTransferMetrics("gzip");
+    }
+
+    @Test
+    public void testGetFestivalsStreamingDeflate() throws ResponseParsingException, IOException {
+        serve("deflate", deflate(getPayload(), false));
+
+        List<Festival> festivals = new ArrayList<>();
+        apiClient.getFestivals(festivals::add);
+
+        assertEquals(FESTIVAL_COUNT, festivals.size());
+        assertTransferMetrics("deflate");
+    }
+
+    @Test
+    public void testGetFestivalsRawDeflate() throws ResponseParsingException, IOException {
+        // Deflate data without the zlib wrapper, as some servers send it
+        serve("deflate", deflate(getPayload(), true));
+
+        assertEquals(FESTIVAL_COUNT, apiClient.getFestivals().size());
+        assertTransferMetrics("deflate");
+    }
+
+    @Test
+    public void testGetFestivalsCompressionDisabled() throws ResponseParsingException {
+        ReflectionTestUtils.setField(apiClient, "compressionEnabled", false);
+        serve(null, getPayload());
+
+        List<Festival> festivals = new ArrayList<>();
+        apiClient.getFestivals(festivals::add);
+
+        assertEquals(FESTIVAL_COUNT, festivals.size());
+        assertNull(acceptEncoding);
+        TransferMetrics transferMetrics = apiClient.getLastTransferMetrics();
+        assertEquals("identity", transferMetrics.getContentEncoding());
+        assertEquals(getPayload().length, transferMetrics.getWireBytes());
+        assertEquals(getPayload().length, transferMetrics.getDecodedBytes());
+    }
+
+    @Test(expected = ResponseParsingException.class)
+    public void testGetFestivalsCorruptedGzip() throws ResponseParsingException, IOException {
+        byte[] compressedPayload = gzip(getPayload());
+        compressedPayload[compressedPayload.length / 2] ^= 0x55;
+        serve("gzip", compressedPayload);
+
+        apiClient.getFestivals(festival -> {});
+    }
+
+    @Test
+    public void testGetFestivalsEmptyGzipBodyFallsBack() throws ResponseParsingException, IOException {
+        Path journalDirectory = Files.createTempDirectory("compression-test-journal");
+        try {
+            ResponseJournal journal = new ResponseJournal();
+            ReflectionTestUtils.setField(journal, "enabled", true);
+            ReflectionTestUtils.setField(journal, "directory", journalDirectory.toString());
+            ReflectionTestUtils.setField(apiClient, "responseJournal", journal);
+            journal.append(getPayload());
+
+            // Labelled gzip, but without a gzip header to read
+            serve("gzip", new byte[0]);
+
+            assertEquals(FESTIVAL_COUNT, apiClient.getFestivals().size());
+            assertEquals(0, apiClient.getLastTransferMetrics().getWireBytes());
+        } finally {
+            try (Stream<Path> segments = Files.list(journalDirectory)) {
+                segments.forEach(segment -> segment.toFile().delete());
+            }
+            Files.delete(journalDirectory);
+        }
+    }
+
+    @Test(expected = ResponseParsingException.class)
+    public void testGetFestivalsUnsupportedEncoding() throws ResponseParsingException {
+        serve("br", getPayload());
+
+        apiClient.getFestivals();
+    }
+
+    private void serve(String contentEncoding, byte[] responseBody) {
+        this.contentEncoding = contentEncoding;
+        this.responseBody = responseBody;
+    }
+
+    private void assertTransferMetrics(String contentEncoding) {
+        TransferMetrics transferMetrics = apiClient.getLastTransferMetrics();
+        assertEquals(contentEncoding, transferMetrics.getContentEncoding());
+        assertEquals(responseBody.length, transferMetrics.getWireBytes());
+        assertEquals(getPayload().length, transferMetrics.getDecodedBytes());
+        assertTrue(transferMetrics.getCompressionRatio() > 5);
+    }
+
+    private byte[] gzip(byte[] payload) throws IOException {
+        ByteArrayOutputStream compressedPayload = new ByteArrayOutputStream();
+        try (GZIPOutputStream outputStream = new GZIPOutputStream(compressedPayload)) {
+            outputStream.write(payload);
+        }
+        return compressedPayload.toByteArray();
+    }
+
+    private byte[] deflate(byte[] payload, boolean raw) throws IOException {
+        ByteArrayOutputStream compressedPayload = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, raw);
+        try (DeflaterOutputStream outputStream = new DeflaterOutputStream(compressedPayload, deflater)) {
+            outputStream.write(payload);
+        } finally {
+            deflater.end();
+        }
+        return compressedPayload.toByteArray();
+    }
+
+    /**
+     * Repetitive festivals response, as served by the API.
+     */
+    private byte[] getPayload() {
+        StringBuilder payload = new StringBuilder("[");
+        for(int i = 0; i < FESTIVAL_COUNT; i++) {
+            payload.append(i > 0 ? "," : "").append("{\"name\":\"Festival ").append(i).append("\",\"bands\":[");
+            for(int j = 0; j < 10; j++) {
+                payload.append(j > 0 ? "," : "").append("{\"name\":\"Band ").append(j)
+                        .append("\",\"recordLabel\":\"Record Label ").append(j % 3).append("\"}");
+            }
+            payload.append("]}");
+        }
+        return payload.append("]").toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
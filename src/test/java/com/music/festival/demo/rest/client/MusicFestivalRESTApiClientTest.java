@@ -1,8 +1,14 @@
 package com.music.festival.demo.rest.client;
 
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.music.festival.demo.journal.ResponseJournal;
 import com.music.festival.demo.rest.client.exception.ResponseParsingException;
 import com.music.festival.demo.rest.client.model.Festival;
 import org.glassfish.jersey.client.ClientConfig;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -12,14 +18,23 @@ import org.mockito.stubbing.Answer;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
+import org.slf4j.LoggerFactory;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import javax.ws.rs.ProcessingException;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Invocation;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.Assert.*;
@@ -43,6 +58,8 @@ public class MusicFestivalRESTApiClientTest {
 
     MusicFestivalRESTApiClient apiCLient = new MusicFestivalRESTApiClient();
 
+    Path journalDirectory;
+
     @Before
     public void setUp() {
         PowerMockito.mockStatic(ClientBuilder.class);
@@ -50,14 +67,25 @@ public class MusicFestivalRESTApiClientTest {
         when(mockCLient.target(any(String.class))).thenReturn(mockWebTarget);
         when(mockWebTarget.path("festivals")).thenReturn(mockWebTarget);
         when(mockWebTarget.request(MediaType.APPLICATION_JSON)).thenReturn(mockInvocationBuilder);
+        when(mockInvocationBuilder.header(any(String.class), any())).thenReturn(mockInvocationBuilder);
         when(mockInvocationBuilder.get()).thenReturn(mockResponse);
         ReflectionTestUtils.setField(apiCLient, "REST_URI", "http://eacodingtest.digital.energyaustralia.com.au/api/v1/");
     }
 
+    @After
+    public void tearDown() throws IOException {
+        if(journalDirectory != null) {
+            try (java.util.stream.Stream<Path> segments = Files.list(journalDirectory)) {
+                segments.forEach(segment -> segment.toFile().delete());
+            }
+            Files.delete(journalDirectory);
+        }
+    }
+
     @Test
     public void testGetFestivalsWithoutExponentialBackoff() throws ResponseParsingException {
         when(mockResponse.getStatus()).thenReturn(Response.Status.OK.getStatusCode());
-        when(mockResponse.readEntity(String.class)).thenReturn(getDummyResponseString());
+        when(mockResponse.readEntity(InputStream.class)).thenAnswer(invocation -> toStream(getDummyResponseString()));
         List<Festival> festivals = apiCLient.getFestivals();
         assertNotNull(festivals);
         assertEquals(5, festivals.size());
@@ -78,7 +106,7 @@ public class MusicFestivalRESTApiClientTest {
                 return Response.Status.OK.getStatusCode();
             }
         });
-        when(mockResponse.readEntity(String.class)).thenReturn(getDummyResponseString());
+        when(mockResponse.readEntity(InputStream.class)).thenAnswer(invocation -> toStream(getDummyResponseString()));
 
         List<Festival> festivals = apiCLient.getFestivals();
 
@@ -92,11 +120,188 @@ public class MusicFestivalRESTApiClientTest {
     @Test(expected = ResponseParsingException.class)
     public void testGetFestivalsWithException() throws ResponseParsingException {
         when(mockResponse.getStatus()).thenReturn(Response.Status.OK.getStatusCode());
-        when(mockResponse.readEntity(String.class)).thenReturn(getInvalidResponseString());
+        when(mockResponse.readEntity(InputStream.class)).thenReturn(toStream(getInvalidResponseString()));
         List<Festival> festivals = apiCLient.getFestivals();
         fail("Expected exception ResponseParsingException");
     }
 
+    @Test(expected = ResponseParsingException.class)
+    public void testGetFestivalsWithEmptyResponse() throws ResponseParsingException {
+        when(mockResponse.getStatus()).thenReturn(Response.Status.OK.getStatusCode());
+        when(mockResponse.readEntity(InputStream.class)).thenReturn(toStream(""));
+        apiCLient.getFestivals();
+        fail("Expected exception ResponseParsingException");
+    }
+
+    @Test
+    public void testGetFestivalsStreaming() throws ResponseParsingException {
+        when(mockResponse.getStatus()).thenReturn(Response.Status.OK.getStatusCode());
+        when(mockResponse.readEntity(InputStream.class)).thenReturn(new ByteArrayInputStream(getDummyResponseString().getBytes(StandardCharsets.UTF_8)));
+
+        List<Festival> festivals = new ArrayList<>();
+        apiCLient.getFestivals(festivals::add);
+
+        assertEquals(5, festivals.size());
+        assertEquals("LOL-palooza", festivals.get(0).getName());
+        assertEquals(4, festivals.get(0).getBands().size());
+        assertNull(festivals.get(4).getName());
+    }
+
+    @Test(expected = ResponseParsingException.class)
+    public void testGetFestivalsStreamingWithException() throws ResponseParsingException {
+        when(mockResponse.getStatus()).thenReturn(Response.Status.OK.getStatusCode());
+        when(mockResponse.readEntity(InputStream.class)).thenReturn(new ByteArrayInputStream(getInvalidResponseString().getBytes(StandardCharsets.UTF_8)));
+        apiCLient.getFestivals(festival -> {});
+        fail("Expected exception ResponseParsingException");
+    }
+
+    @Test
+    public void testGetFestivalsJournalsResponse() throws ResponseParsingException, IOException {
+        ResponseJournal journal = enableJournal();
+        when(mockResponse.getStatus()).thenReturn(Response.Status.OK.getStatusCode());
+        when(mockResponse.readEntity(InputStream.class)).thenAnswer(invocation -> toStream(getDummyResponseString()));
+
+        apiCLient.getFestivals();
+
+        assertEquals(getDummyResponseString(), new String(journal.readLatest().get(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testGetFestivalsStreamingJournalsResponse() throws ResponseParsingException, IOException {
+        ResponseJournal journal = enableJournal();
+        when(mockResponse.getStatus()).thenReturn(Response.Status.OK.getStatusCode());
+        when(mockResponse.readEntity(InputStream.class)).thenReturn(new ByteArrayInputStream(getDummyResponseString().getBytes(StandardCharsets.UTF_8)));
+
+        apiCLient.getFestivals(festival -> {});
+
+        assertEquals(getDummyResponseString(), new String(journal.readLatest().get(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testMalformedResponseIsNotJournaled() throws ResponseParsingException, IOException {
+        ResponseJournal journal = enableJournal();
+        journal.append(getDummyResponseString().getBytes(StandardCharsets.UTF_8));
+        when(mockResponse.getStatus()).thenReturn(Response.Status.OK.getStatusCode());
+        String truncatedResponse = getDummyResponseString().substring(0, getDummyResponseString().length() / 2);
+        when(mockResponse.readEntity(InputStream.class)).thenReturn(
+                toStream("<html><body>Service Unavailable</body></html>"), toStream(truncatedResponse));
+
+        // An error page and a truncated body, both with status 200
+        for(int i = 0; i < 2; i++) {
+            try {
+                apiCLient.getFestivals();
+                fail("Expected exception ResponseParsingException");
+            } catch (ResponseParsingException e) {
+                // Expected
+            }
+        }
+
+        assertEquals(getDummyResponseString(), new String(journal.readLatest().get(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testGetFestivalsReplaysJournaledResponse() throws ResponseParsingException, IOException {
+        ResponseJournal journal = enableJournal();
+        journal.append(getDummyResponseString().getBytes(StandardCharsets.UTF_8));
+        ReflectionTestUtils.setField(journal, "replayEnabled", true);
+
+        List<Festival> festivals = apiCLient.getFestivals();
+        List<Festival> streamedFestivals = new ArrayList<>();
+        apiCLient.getFestivals(streamedFestivals::add);
+
+        // Served without calling the API
+        verify(mockInvocationBuilder, never()).get();
+        assertEquals(5, festivals.size());
+        assertEquals(5, streamedFestivals.size());
+    }
+
+    @Test(expected = ResponseParsingException.class)
+    public void testGetFestivalsReplayWithoutJournaledResponse() throws ResponseParsingException, IOException {
+        ResponseJournal journal = enableJournal();
+        ReflectionTestUtils.setField(journal, "replayEnabled", true);
+
+        apiCLient.getFestivals();
+    }
+
+    @Test
+    public void testGetFestivalsFallsBackToJournaledResponse() throws ResponseParsingException, IOException {
+        ResponseJournal journal = enableJournal();
+        journal.append(getDummyResponseString().getBytes(StandardCharsets.UTF_8));
+        when(mockInvocationBuilder.get()).thenThrow(new ProcessingException("Connection refused"));
+
+        assertEquals(5, apiCLient.getFestivals().size());
+
+        List<Festival> streamedFestivals = new ArrayList<>();
+        apiCLient.getFestivals(streamedFestivals::add);
+        assertEquals(5, streamedFestivals.size());
+    }
+
+    @Test
+    public void testGetFestivalsFallsBackOnEmptyResponse() throws ResponseParsingException, IOException {
+        ResponseJournal journal = enableJournal();
+        journal.append(getDummyResponseString().getBytes(StandardCharsets.UTF_8));
+        when(mockResponse.getStatus()).thenReturn(Response.Status.OK.getStatusCode());
+        when(mockResponse.readEntity(InputStream.class)).thenReturn(toStream(""));
+
+        assertEquals(5, apiCLient.getFestivals().size());
+    }
+
+    @Test(expected = ProcessingException.class)
+    public void testGetFestivalsWithoutFallback() throws ResponseParsingException, IOException {
+        ResponseJournal journal = enableJournal();
+        journal.append(getDummyResponseString().getBytes(StandardCharsets.UTF_8));
+        ReflectionTestUtils.setField(journal, "fallbackEnabled", false);
+        when(mockInvocationBuilder.get()).thenThrow(new ProcessingException("Connection refused"));
+
+        apiCLient.getFestivals();
+    }
+
+    @Test
+    public void testGetFestivalsLogsSampledTruncatedResponse() throws ResponseParsingException {
+        ReflectionTestUtils.setField(apiCLient, "payloadLogMaxCharacters", 20);
+        ReflectionTestUtils.setField(apiCLient, "payloadLogSampleRate", 2);
+        when(mockResponse.getStatus()).thenReturn(Response.Status.OK.getStatusCode());
+        when(mockResponse.readEntity(InputStream.class)).thenAnswer(invocation -> toStream(getDummyResponseString()));
+
+        Logger clientLogger = (Logger) LoggerFactory.getLogger(MusicFestivalRESTApiClient.class);
+        Level level = clientLogger.getLevel();
+        ListAppender<ILoggingEvent> logAppender = new ListAppender<>();
+        logAppender.start();
+        clientLogger.addAppender(logAppender);
+        clientLogger.setLevel(Level.DEBUG);
+        try {
+            for(int i = 0; i < 3; i++) {
+                apiCLient.getFestivals();
+            }
+        } finally {
+            clientLogger.detachAppender(logAppender);
+            clientLogger.setLevel(level);
+        }
+
+        // First and third response are logged, cut to 20 characters
+        List<String> payloadMessages = new ArrayList<>();
+        logAppender.list.stream()
+                .map(ILoggingEvent::getFormattedMessage)
+                .filter(message -> message.startsWith("Response from the API"))
+                .forEach(payloadMessages::add);
+        assertEquals(2, payloadMessages.size());
+        assertEquals("Response from the API (" + getDummyResponseString().length() + " bytes) : "
+                + getDummyResponseString().substring(0, 20) + "...", payloadMessages.get(0));
+    }
+
+    private InputStream toStream(String responseString) {
+        return new ByteArrayInputStream(responseString.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private ResponseJournal enableJournal() throws IOException {
+        journalDirectory = Files.createTempDirectory("api-client-journal-test");
+        ResponseJournal journal = new ResponseJournal();
+        ReflectionTestUtils.setField(journal, "enabled", true);
+        ReflectionTestUtils.setField(journal, "directory", journalDirectory.toString());
+        ReflectionTestUtils.setField(apiCLient, "responseJournal", journal);
+        return journal;
+    }
+
     private String getDummyResponseString() {
         return "[{\"name\":\"LOL-palooza\",\"bands\":[{\"name\":\"Werewolf Weekday\",\"recordLabel\":\"XS Recordings\"},{\"name\":\"Jill Black\",\"recordLabel\":\"Fourth Woman Records\"},{\"name\":\"Frank Jupiter\",\"recordLabel\":\"Pacific Records\"},{\"name\":\"Winter Primates\",\"recordLabel\":\"\"}]},{\"name\":\"Small Night In\",\"bands\":[{\"name\":\"Wild Antelope\",\"recordLabel\":\"Marner Sis. Recording\"},{\"name\":\"Squint-281\",\"recordLabel\":\"Outerscope\"},{\"name\":\"Green Mild Cold Capsicum\",\"recordLabel\":\"Marner Sis. Recording\"},{\"name\":\"Yanke East\",\"recordLabel\":\"MEDIOCRE Music\"},{\"name\":\"The Black Dashes\",\"recordLabel\":\"Fourth Woman Records\"}]},{\"name\":\"Trainerella\",\"bands\":[{\"name\":\"Wild Antelope\",\"recordLabel\":\"Still Bottom Records\"},{\"name\":\"YOUKRANE\",\"recordLabel\":\"Anti Records\"},{\"name\":\"Adrian Venti\",\"recordLabel\":\"Monocracy Records\"},{\"name\":\"Manish Ditch\",\"recordLabel\":\"ACR\"}]},{\"name\":\"Twisted Tour\",\"bands\":[{\"name\":\"Auditones\",\"recordLabel\":\"Marner Sis. Recording\"},{\"name\":\"Squint-281\"},{\"name\":\"Summon\",\"recordLabel\":\"Outerscope\"}]},{\"bands\":[{\"name\":\"Critter Girls\",\"recordLabel\":\"ACR\"},{\"name\":\"Propeller\",\"recordLabel\":\"Pacific Records\"}]}]";
     }
@@ -0,0 +1,70 @@
+package com.music.festival.demo.rest.server;
+
+import com.music.festival.demo.feed.FestivalDataChangeFeed;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.ws.rs.sse.OutboundSseEvent;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseEventSink;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class FestivalDataChangeFeedResourceTest {
+
+    FestivalDataChangeFeed changeFeed;
+    FestivalDataChangeFeedResource resource;
+    Sse sse;
+
+    @Before
+    public void setUp() {
+        changeFeed = new FestivalDataChangeFeed();
+        resource = new FestivalDataChangeFeedResource();
+        ReflectionTestUtils.setField(resource, "changeFeed", changeFeed);
+        sse = mock(Sse.class, Mockito.RETURNS_DEEP_STUBS);
+    }
+
+    @After
+    public void tearDown() {
+        resource.shutdown();
+        changeFeed.shutdown();
+    }
+
+    @Test
+    public void testHeartbeatRemovesClosedClient() {
+        SseEventSink eventSink = mock(SseEventSink.class);
+        when(eventSink.send(any(OutboundSseEvent.class))).thenReturn(CompletableFuture.completedFuture(null));
+        resource.streamChanges(0L, null, eventSink, sse);
+
+        resource.sendHeartbeats();
+        assertEquals(1, changeFeed.getListenerCount());
+        verify(eventSink, times(1)).send(any(OutboundSseEvent.class));
+
+        // Client went away between change events
+        when(eventSink.isClosed()).thenReturn(true);
+        resource.sendHeartbeats();
+        assertEquals(0, changeFeed.getListenerCount());
+        verify(eventSink, times(1)).send(any(OutboundSseEvent.class));
+    }
+
+    @Test
+    public void testHeartbeatRemovesClientOnFailedWrite() {
+        SseEventSink eventSink = mock(SseEventSink.class);
+        CompletableFuture<Object> failedWrite = new CompletableFuture<>();
+        failedWrite.completeExceptionally(new IOException("Broken pipe"));
+        doReturn(failedWrite).when(eventSink).send(any(OutboundSseEvent.class));
+        resource.streamChanges(0L, null, eventSink, sse);
+        assertEquals(1, changeFeed.getListenerCount());
+
+        resource.sendHeartbeats();
+        assertEquals(0, changeFeed.getListenerCount());
+        verify(eventSink).close();
+    }
+}
@@ -1,6 +1,10 @@
 package com.music.festival.demo.service.impl;
 
+import com.music.festival.demo.cache.FestivalMembershipIndex;
 import com.music.festival.demo.cache.MusicFestivalCache;
+import com.music.festival.demo.external.ExternalFestivalDataRestructurer;
+import com.music.festival.demo.model.CatalogueEntry;
+import com.music.festival.demo.model.FestivalStatistics;
 import com.music.festival.demo.rest.client.exception.ResponseParsingException;
 import org.junit.Before;
 import org.junit.Test;
@@ -9,12 +13,21 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
 
 public class MusicFestivalServiceImplTest {
     @Mock
     MusicFestivalCache mockCache;
 
+    @Mock
+    ExternalFestivalDataRestructurer mockExternalRestructurer;
+
     @InjectMocks
     MusicFestivalServiceImpl musicFestivalService = new MusicFestivalServiceImpl();
 
@@ -32,4 +45,53 @@ public class MusicFestivalServiceImplTest {
         musicFestivalService.getAllFestivals();
         Mockito.verify(mockCache, Mockito.times(1)).getAllMusicFestivals();
     }
+
+    /**
+     * Verify interaction with the out of core restructurer
+     */
+    @Test
+    public void testRestructureFestivalDataOutOfCore() throws ResponseParsingException, IOException {
+        List<CatalogueEntry> entries = new ArrayList<>();
+        musicFestivalService.restructureFestivalDataOutOfCore(entries::add);
+        Mockito.verify(mockExternalRestructurer, Mockito.times(1)).restructureFestivalData(Mockito.any());
+        Mockito.verifyZeroInteractions(mockCache);
+    }
+
+    /**
+     * Verify statistics are answered from the statistics computed by the cache
+     */
+    @Test
+    public void testGetFestivalStatistics() throws ResponseParsingException {
+        FestivalStatistics statistics = new FestivalStatistics(Collections.singletonMap("ACR", 2),
+                Collections.singletonMap("Critter Girls", 1),
+                Arrays.asList("Critter Girls", "Manish Ditch"),
+                Collections.singletonList("Anti Records"));
+        Mockito.when(mockCache.getFestivalStatistics()).thenReturn(statistics);
+
+        assertEquals(2, musicFestivalService.getBandCountByRecordLabel("ACR"));
+        assertEquals(0, musicFestivalService.getBandCountByRecordLabel("Unknown Records"));
+        assertEquals(1, musicFestivalService.getFestivalCountByBand("Critter Girls"));
+        assertEquals(0, musicFestivalService.getFestivalCountByBand("Unknown Band"));
+        assertEquals(Collections.singletonList("Critter Girls"), musicFestivalService.getMostBookedBands(1));
+        assertEquals(2, musicFestivalService.getMostBookedBands(10).size());
+        assertTrue(musicFestivalService.getMostBookedBands(-1).isEmpty());
+        assertEquals(Collections.singletonList("Anti Records"), musicFestivalService.getRecordLabelsWithoutFestivals());
+    }
+
+    /**
+     * Verify membership checks are answered by the index built by the cache
+     */
+    @Test
+    public void testHasPlayedFestival() throws ResponseParsingException {
+        FestivalMembershipIndex mockIndex = Mockito.mock(FestivalMembershipIndex.class);
+        Mockito.when(mockIndex.hasPlayed("Critter Girls", "Trainerella")).thenReturn(true);
+        Mockito.when(mockCache.getMembershipIndex()).thenReturn(mockIndex);
+
+        assertTrue(musicFestivalService.hasPlayedFestival("Critter Girls", "Trainerella"));
+        assertFalse(musicFestivalService.hasPlayedFestival("Critter Girls", "LOL-palooza"));
+
+        boolean[] results = musicFestivalService.hasPlayedFestivals(Arrays.asList("Critter Girls", "Propeller"), Arrays.asList("Trainerella", "Trainerella"));
+        assertEquals(2, results.length);
+        Mockito.verify(mockIndex, Mockito.times(1)).hasPlayed(Mockito.anyList(), Mockito.anyList(), Mockito.same(results));
+    }
 }
@@ -0,0 +1,154 @@
+package com.music.festival.demo.shard;
+
+import com.music.festival.demo.model.Band;
+import com.music.festival.demo.model.Festival;
+import com.music.festival.demo.model.RecordLabel;
+import org.openjdk.jmh.annotations.*;
+import org.powermock.reflect.Whitebox;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures writing a catalogue as a single file and as shards written in parallel,
+ * and reading one record label by scanning the single file, by a positional read on a shard and from a memory mapped shard.
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Dbenchmark=ShardedOutputBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShardedOutputBenchmark {
+
+    private static final int RECORD_LABEL_COUNT = 5000;
+
+    @Param({"1", "4"})
+    private int shardCount;
+
+    private List<RecordLabel> recordLabels;
+    private Path outputDirectory;
+    private Path outputFile;
+    private Path singleOutputFile;
+    private ShardedOutputWriter writer;
+    private ShardedOutputReader seekingReader;
+    private ShardedOutputReader memoryMappedReader;
+    private Random random;
+
+    @Setup
+    public void setUp() throws IOException {
+        recordLabels = getCatalogue();
+        outputDirectory = Files.createTempDirectory("sharded-output-benchmark");
+        outputFile = outputDirectory.resolve("Output.txt");
+        singleOutputFile = outputDirectory.resolve("Single.txt");
+        writer = new ShardedOutputWriter();
+        Whitebox.setInternalState(writer, "shardCount", shardCount);
+
+        writer.write(recordLabels, this::render, outputFile);
+        writeSingleFile();
+        seekingReader = ShardedOutputReader.open(outputFile, false);
+        memoryMappedReader = ShardedOutputReader.open(outputFile, true);
+        random = new Random(42);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        seekingReader.close();
+        memoryMappedReader.close();
+        writer.shutdown();
+        try (Stream<Path> outputFiles = Files.list(outputDirectory)) {
+            outputFiles.forEach(file -> file.toFile().delete());
+        }
+        Files.delete(outputDirectory);
+    }
+
+    @Benchmark
+    public Object writeShards() throws IOException {
+        return writer.write(recordLabels, this::render, outputFile);
+    }
+
+    @Benchmark
+    public Path writeSingleFile() throws IOException {
+        List<String> lines = new ArrayList<>();
+        recordLabels.forEach(recordLabel -> lines.addAll(render(recordLabel)));
+        return Files.write(singleOutputFile, lines);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<String> lookupByScan() throws IOException {
+        String recordLabelName = getRandomRecordLabelName();
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(singleOutputFile)) {
+            String line;
+            boolean inSection = false;
+            while((line = reader.readLine()) != null) {
+                if(!line.startsWith(" ")) {
+                    if(inSection) {
+                        break;
+                    }
+                    inSection = line.equals(recordLabelName);
+                }
+                if(inSection) {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<String> lookupBySeek() throws IOException {
+        return seekingReader.readRecordLabel(getRandomRecordLabelName());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<String> lookupMemoryMapped() throws IOException {
+        return memoryMappedReader.readRecordLabel(getRandomRecordLabelName());
+    }
+
+    private String getRandomRecordLabelName() {
+        return recordLabels.get(random.nextInt(RECORD_LABEL_COUNT)).getName();
+    }
+
+    private List<String> render(RecordLabel recordLabel) {
+        List<String> lines = new ArrayList<>();
+        lines.add(recordLabel.getName());
+        recordLabel.getBands().forEach((bandName, band) -> {
+            lines.add("     " + bandName);
+            band.getFestivals().forEach((festivalName, festival) -> lines.add("          " + festivalName));
+        });
+        return lines;
+    }
+
+    /**
+     * Catalogue of 20 bands per record label and 10 festivals per band.
+     */
+    private List<RecordLabel> getCatalogue() {
+        List<RecordLabel> catalogue = new ArrayList<>();
+        for(int i = 0; i < RECORD_LABEL_COUNT; i++) {
+            RecordLabel recordLabel = new RecordLabel(String.format("Record Label %05d", i));
+            Map<String, Band> bands = new LinkedHashMap<>();
+            for(int j = 0; j < 20; j++) {
+                Band band = new Band("Band " + i + "-" + j);
+                Map<String, Festival> festivals = new LinkedHashMap<>();
+                for(int k = 0; k < 10; k++) {
+                    festivals.put("Festival " + k, new Festival("Festival " + k));
+                }
+                band.setFestivals(festivals);
+                bands.put(band.getName(), band);
+            }
+            recordLabel.setBands(bands);
+            catalogue.add(recordLabel);
+        }
+        return catalogue;
+    }
+}
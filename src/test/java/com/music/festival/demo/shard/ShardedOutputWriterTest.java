@@ -0,0 +1,188 @@
+package com.music.festival.demo.shard;
+
+import com.music.festival.demo.model.Band;
+import com.music.festival.demo.model.Festival;
+import com.music.festival.demo.model.RecordLabel;
+import com.music.festival.demo.model.ShardIndexEntry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.*;
+
+public class ShardedOutputWriterTest {
+
+    private static final int RECORD_LABEL_COUNT = 50;
+
+    private Path outputDirectory;
+    private Path outputFile;
+    private ShardedOutputWriter writer;
+
+    @Before
+    public void setUp() throws IOException {
+        outputDirectory = Files.createTempDirectory("sharded-output-writer-test");
+        outputFile = outputDirectory.resolve("Output.txt");
+        writer = new ShardedOutputWriter();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        writer.shutdown();
+        try (Stream<Path> outputFiles = Files.list(outputDirectory)) {
+            outputFiles.forEach(file -> file.toFile().delete());
+        }
+        Files.delete(outputDirectory);
+    }
+
+    @Test
+    public void testWriteShards() throws IOException {
+        List<RecordLabel> recordLabels = getRecordLabels();
+
+        List<ShardIndexEntry> indexEntries = writer.write(recordLabels, this::render, outputFile);
+
+        // Shards hold contiguous ranges of record labels in output order
+        assertEquals(recordLabels.stream().map(RecordLabel::getName).collect(toList()),
+                indexEntries.stream().map(ShardIndexEntry::getRecordLabel).collect(toList()));
+        assertTrue(Files.exists(ShardedOutputWriter.getIndexFile(outputFile)));
+        for(int shardNumber = 0; shardNumber < 4; shardNumber++) {
+            assertTrue(Files.exists(outputDirectory.resolve(String.format("Output-%03d.txt", shardNumber))));
+        }
+        assertFalse(Files.exists(outputDirectory.resolve("Output-004.txt")));
+
+        // Concatenated shards are the single output file
+        List<String> shardLines = new ArrayList<>();
+        for(int shardNumber = 0; shardNumber < 4; shardNumber++) {
+            shardLines.addAll(Files.readAllLines(ShardedOutputWriter.getShardFile(outputFile, shardNumber)));
+        }
+        assertEquals(renderAll(recordLabels), shardLines);
+    }
+
+    @Test
+    public void testReadRecordLabel() throws IOException {
+        List<RecordLabel> recordLabels = getRecordLabels();
+        writer.write(recordLabels, this::render, outputFile);
+
+        for(boolean memoryMapped : new boolean[]{false, true}) {
+            try (ShardedOutputReader reader = ShardedOutputReader.open(outputFile, memoryMapped)) {
+                assertEquals(recordLabels.stream().map(RecordLabel::getName).collect(toList()), reader.getRecordLabels());
+                for(RecordLabel recordLabel : recordLabels) {
+                    assertEquals(render(recordLabel), reader.readRecordLabel(recordLabel.getName()));
+                    assertEquals(render(recordLabel).size(), reader.getIndexEntry(recordLabel.getName()).getLineCount());
+                }
+                assertTrue(reader.readRecordLabel("Unknown Records").isEmpty());
+                assertNull(reader.getIndexEntry("Unknown Records"));
+            }
+        }
+    }
+
+    @Test
+    public void testFewerRecordLabelsThanShards() throws IOException {
+        List<RecordLabel> recordLabels = getRecordLabels().subList(0, 2);
+
+        List<ShardIndexEntry> indexEntries = writer.write(recordLabels, this::render, outputFile);
+
+        assertEquals(2, indexEntries.stream().map(ShardIndexEntry::getShardFile).distinct().count());
+    }
+
+    @Test
+    public void testStaleShardsAreDeleted() throws IOException {
+        writer.write(getRecordLabels(), this::render, outputFile);
+        Whitebox.setInternalState(writer, "shardCount", 2);
+
+        writer.write(getRecordLabels(), this::render, outputFile);
+
+        assertTrue(Files.exists(ShardedOutputWriter.getShardFile(outputFile, 1)));
+        assertFalse(Files.exists(ShardedOutputWriter.getShardFile(outputFile, 2)));
+        assertFalse(Files.exists(ShardedOutputWriter.getShardFile(outputFile, 3)));
+    }
+
+    @Test
+    public void testWriteNoRecordLabels() throws IOException {
+        assertTrue(writer.write(Collections.emptyList(), this::render, outputFile).isEmpty());
+
+        try (ShardedOutputReader reader = ShardedOutputReader.open(outputFile, true)) {
+            assertTrue(reader.getRecordLabels().isEmpty());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testRenderFailure() throws IOException {
+        writer.write(getRecordLabels(), recordLabel -> {
+            throw new IllegalStateException("Render failed");
+        }, outputFile);
+    }
+
+    @Test
+    public void testFailedWriteLeavesNoStaleIndex() throws IOException {
+        List<RecordLabel> recordLabels = getRecordLabels();
+        writer.write(recordLabels, this::render, outputFile);
+        List<String> firstShardLines = Files.readAllLines(ShardedOutputWriter.getShardFile(outputFile, 0));
+
+        // Fail on the last record label, after the other shards have been written
+        try {
+            writer.write(recordLabels, recordLabel -> {
+                if(recordLabel == recordLabels.get(RECORD_LABEL_COUNT - 1)) {
+                    throw new IllegalStateException("Render failed");
+                }
+                return render(recordLabel);
+            }, outputFile);
+            fail("Expected the write to fail");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        // No index refers to shards of the failed write, and no temporary files are left behind
+        assertFalse(Files.exists(ShardedOutputWriter.getIndexFile(outputFile)));
+        assertEquals(firstShardLines, Files.readAllLines(ShardedOutputWriter.getShardFile(outputFile, 0)));
+        try (Stream<Path> outputFiles = Files.list(outputDirectory)) {
+            assertFalse(outputFiles.anyMatch(file -> file.getFileName().toString().endsWith(".tmp")));
+        }
+    }
+
+    private List<String> renderAll(List<RecordLabel> recordLabels) {
+        List<String> lines = new ArrayList<>();
+        recordLabels.forEach(recordLabel -> lines.addAll(render(recordLabel)));
+        return lines;
+    }
+
+    private List<String> render(RecordLabel recordLabel) {
+        List<String> lines = new ArrayList<>();
+        lines.add(recordLabel.getName());
+        recordLabel.getBands().forEach((bandName, band) -> {
+            lines.add("     " + bandName);
+            band.getFestivals().forEach((festivalName, festival) -> lines.add("          " + festivalName));
+        });
+        return lines;
+    }
+
+    /**
+     * Record labels of growing size, with multi-byte names to check byte offsets.
+     */
+    private List<RecordLabel> getRecordLabels() {
+        List<RecordLabel> recordLabels = new ArrayList<>();
+        for(int i = 0; i < RECORD_LABEL_COUNT; i++) {
+            RecordLabel recordLabel = new RecordLabel(String.format("Récords %02d", i));
+            Map<String, Band> bands = new LinkedHashMap<>();
+            for(int j = 0; j <= i % 5; j++) {
+                Band band = new Band("Bänd " + i + "-" + j);
+                Map<String, Festival> festivals = new LinkedHashMap<>();
+                for(int k = 0; k < i % 3; k++) {
+                    festivals.put("Festival ✓ " + k, new Festival("Festival ✓ " + k));
+                }
+                band.setFestivals(festivals);
+                bands.put(band.getName(), band);
+            }
+            recordLabel.setBands(bands);
+            recordLabels.add(recordLabel);
+        }
+        return recordLabels;
+    }
+}